@@ -4,30 +4,18 @@ import karm.van.config.properties.AuthenticationMicroServiceProperties;
 import karm.van.config.properties.CommentMicroServiceProperties;
 import karm.van.config.properties.ImageMicroServiceProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-
-import java.util.concurrent.Executor;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableJpaRepositories(basePackages = "karm.van.repo.jpaRepo")
 @EnableElasticsearchRepositories(basePackages = "karm.van.repo.elasticRepo")
 @EnableConfigurationProperties({CommentMicroServiceProperties.class, ImageMicroServiceProperties.class, AuthenticationMicroServiceProperties.class})
 @Configuration
 @EnableAsync
+@EnableScheduling
+// Исполнитель для @Async создаёт Spring Boot: пул из spring.task.execution или виртуальные потоки при spring.threads.virtual.enabled
 public class AdsConfiguration {
-
-    @Bean
-    public Executor getAsyncExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(4);
-        executor.setMaxPoolSize(10);
-        executor.setQueueCapacity(100);
-        executor.setThreadNamePrefix("Async-");
-        executor.initialize();
-        return executor;
-    }
 }
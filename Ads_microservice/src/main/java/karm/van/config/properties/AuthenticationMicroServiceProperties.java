@@ -16,8 +16,8 @@ public class AuthenticationMicroServiceProperties {
     @Setter
     @Getter
     public static class Endpoints{
-        private String validateToken;
         private String user;
+        private String usersBatch;
         private String addCardToUser;
         private String unlinkCardFromUser;
 
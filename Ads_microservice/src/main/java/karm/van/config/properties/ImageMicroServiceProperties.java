@@ -19,7 +19,10 @@ public class ImageMicroServiceProperties {
         private String addCardImages;
         private String delImagesFromMinio;
         private String getImages;
+        private String getCardsImages;
         private String delOneImageFromCard;
         private String moveImage;
+        private String uploadIntent;
+        private String completeUpload;
     }
 }
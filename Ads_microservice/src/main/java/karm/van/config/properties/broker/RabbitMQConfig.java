@@ -8,6 +8,7 @@ import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -18,6 +19,12 @@ public class RabbitMQConfig {
     @Value("${rabbitmq.exchange.message.name}")
     public String exchange;
 
+    @Value("${rabbitmq.listener.elastic.batch-size}")
+    private int elasticBatchSize;
+
+    @Value("${rabbitmq.listener.elastic.receive-timeout}")
+    private long elasticReceiveTimeout;
+
     @Bean
     public TopicExchange finderExchange() {
         return new TopicExchange(exchange);
@@ -36,11 +43,27 @@ public class RabbitMQConfig {
         return rabbitTemplate;
     }
 
+    // Через configurer фабрики получают настройки spring.rabbitmq.listener и виртуальные потоки, если они включены
     @Bean
-    public RabbitListenerContainerFactory<?> rabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
+    public RabbitListenerContainerFactory<?> rabbitListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                           ConnectionFactory connectionFactory) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
-        factory.setConnectionFactory(connectionFactory);
+        configurer.configure(factory, connectionFactory);
         factory.setMessageConverter(new Jackson2JsonMessageConverter());
         return factory;
     }
+
+    // Сообщения синхронизации с elastic копятся до batch-size штук или receive-timeout мс и обрабатываются пачкой
+    @Bean
+    public RabbitListenerContainerFactory<?> elasticBatchListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                                 ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(elasticBatchSize);
+        factory.setPrefetchCount(elasticBatchSize);
+        factory.setReceiveTimeout(elasticReceiveTimeout);
+        return factory;
+    }
 }
@@ -1,20 +1,31 @@
 package karm.van.controller;
 
 import karm.van.dto.card.CardDto;
+import karm.van.dto.card.CardFeedResponseDto;
 import karm.van.dto.card.CardPageResponseDto;
+import karm.van.dto.card.CardSuggestionDto;
+import karm.van.dto.card.CardWithImagesDto;
 import karm.van.dto.card.FullCardDtoForOutput;
+import karm.van.dto.card.ReindexStatusDto;
+import karm.van.dto.image.UploadFileDto;
+import karm.van.dto.image.UploadSlotDto;
 import karm.van.exception.card.CardNotDeletedException;
 import karm.van.exception.card.CardNotFoundException;
 import karm.van.exception.card.CardNotSavedException;
+import karm.van.exception.card.InvalidCursorException;
+import karm.van.exception.card.ReindexAlreadyRunningException;
+import karm.van.exception.card.SearchPageTooDeepException;
 import karm.van.exception.comment.CommentNotDeletedException;
 import karm.van.exception.image.ImageLimitException;
 import karm.van.exception.image.ImageNotDeletedException;
 import karm.van.exception.image.ImageNotMovedException;
 import karm.van.exception.image.ImageNotSavedException;
+import karm.van.exception.image.InvalidImageException;
 import karm.van.exception.other.SerializationException;
 import karm.van.exception.other.TokenNotExistException;
 import karm.van.exception.user.NotEnoughPermissionsException;
 import karm.van.exception.user.UsernameNotFoundException;
+import karm.van.service.CardReindexService;
 import karm.van.service.CardService;
 import karm.van.service.ElasticService;
 import lombok.RequiredArgsConstructor;
@@ -37,6 +48,7 @@ import java.util.Optional;
 public class CardController {
     private final CardService cardService;
     private final ElasticService elasticService;
+    private final CardReindexService cardReindexService;
 
     @GetMapping("{id}/get")
     public FullCardDtoForOutput getCard(@PathVariable Long id, @RequestHeader("Authorization") String authorization) throws CardNotFoundException, SerializationException, TokenNotExistException, UsernameNotFoundException {
@@ -48,9 +60,13 @@ public class CardController {
                                          @RequestParam(required = false,defaultValue = "5") int limit,
                                          @RequestParam String query,
                                          @RequestParam(required = false) Optional<LocalDate> createTime,
+                                         @RequestParam(required = false,defaultValue = "false") boolean sortByDate,
+                                         @RequestParam(required = false) Optional<String> after,
                                          @RequestHeader("Authorization") String authorization){
         try {
-            return ResponseEntity.ok(elasticService.search(query,pageNumber,limit,authorization,createTime));
+            return ResponseEntity.ok(elasticService.search(query,pageNumber,limit,authorization,createTime,sortByDate,after));
+        }catch (InvalidCursorException | SearchPageTooDeepException e){
+            return ResponseEntity.badRequest().body(e.getMessage());
         }catch (SerializationException e){
             return ResponseEntity.internalServerError().body(e.getMessage());
         }catch (TokenNotExistException e){
@@ -58,6 +74,13 @@ public class CardController {
         }
     }
 
+    @GetMapping("suggest")
+    public List<CardSuggestionDto> suggest(@RequestParam String prefix,
+                                           @RequestParam(required = false,defaultValue = "5") int size,
+                                           @RequestHeader("Authorization") String authorization) throws TokenNotExistException, SerializationException {
+        return elasticService.suggest(prefix,size,authorization);
+    }
+
     @GetMapping("getAll/{pageNumber}/{limit}")
     public CardPageResponseDto getAllCards(@PathVariable int pageNumber,
                                            @PathVariable int limit,
@@ -65,6 +88,24 @@ public class CardController {
         return cardService.getAllCards(pageNumber,limit,authorization);
     }
 
+    @GetMapping("feed")
+    public CardFeedResponseDto getFeed(@RequestParam(required = false) Optional<String> after,
+                                       @RequestParam(required = false,defaultValue = "5") int limit,
+                                       @RequestParam(required = false,defaultValue = "false") boolean withTotal,
+                                       @RequestHeader("Authorization") String authorization) throws TokenNotExistException, SerializationException, InvalidCursorException {
+        return cardService.getFeed(after,limit,withTotal,authorization);
+    }
+
+    @PostMapping("admin/reindex")
+    public ResponseEntity<ReindexStatusDto> startReindex(@RequestHeader("Authorization") String authorization) throws TokenNotExistException, UsernameNotFoundException, NotEnoughPermissionsException, ReindexAlreadyRunningException {
+        return ResponseEntity.accepted().body(cardReindexService.startReindex(authorization));
+    }
+
+    @GetMapping("admin/reindex")
+    public ReindexStatusDto getReindexStatus(@RequestHeader("Authorization") String authorization) throws TokenNotExistException, UsernameNotFoundException, NotEnoughPermissionsException {
+        return cardReindexService.getStatus(authorization);
+    }
+
     @GetMapping("getUserCards/{userId}")
     public List<CardDto> getUserCards(@RequestHeader("Authorization") String authorization,
                                       @RequestHeader("x-api-key") String apiKey,
@@ -92,6 +133,26 @@ public class CardController {
         }
     }
 
+    @PostMapping(value = "add", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void addCardWithUploadedImages(@RequestBody CardWithImagesDto cardWithImagesDto,
+                                          @RequestHeader("Authorization") String authorization) throws ImageNotSavedException, CardNotSavedException, ImageLimitException, TokenNotExistException, UsernameNotFoundException, InvalidImageException {
+        try {
+            cardService.addCardWithUploadedImages(cardWithImagesDto, authorization);
+        } catch (ImageNotSavedException | CardNotSavedException | ImageLimitException | TokenNotExistException |
+                 UsernameNotFoundException | InvalidImageException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("class: "+e.getClass()+", message: "+e.getMessage());
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    @PostMapping("images/upload-intent")
+    public List<UploadSlotDto> createImagesUploadIntent(@RequestBody List<UploadFileDto> files,
+                                                        @RequestHeader("Authorization") String authorization) throws TokenNotExistException, ImageLimitException, InvalidImageException {
+        return cardService.createImagesUploadIntent(files, authorization);
+    }
+
     @PatchMapping(value = "{id}/patch",consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public void patchCard(@PathVariable Long id,
                           @RequestPart(value = "cardDto",required = false) Optional<CardDto> cardDto,
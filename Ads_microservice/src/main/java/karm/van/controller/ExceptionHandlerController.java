@@ -4,6 +4,8 @@ import karm.van.exception.card.CardNotDeletedException;
 import karm.van.exception.card.CardNotFoundException;
 import karm.van.exception.card.CardNotSavedException;
 import karm.van.exception.card.CardNotUnlinkException;
+import karm.van.exception.card.InvalidCursorException;
+import karm.van.exception.card.ReindexAlreadyRunningException;
 import karm.van.exception.comment.CommentNotDeletedException;
 import karm.van.exception.image.*;
 import karm.van.exception.other.SerializationException;
@@ -26,6 +28,21 @@ public class ExceptionHandlerController {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> invalidCursorException(InvalidCursorException ex){
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(ReindexAlreadyRunningException.class)
+    public ResponseEntity<String> reindexAlreadyRunningException(ReindexAlreadyRunningException ex){
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(InvalidImageException.class)
+    public ResponseEntity<String> invalidImageException(InvalidImageException ex){
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(ImageLimitException.class)
     public ResponseEntity<String> imageLimitException(ImageLimitException ex){
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
@@ -0,0 +1,9 @@
+package karm.van.dto.card;
+
+import java.util.List;
+
+public record CardFeedResponseDto(List<FullCardDtoForOutput> cards,
+                                  String nextCursor,
+                                  boolean last,
+                                  Long totalElements) {
+}
@@ -7,5 +7,6 @@ public record CardPageResponseDto(List<FullCardDtoForOutput> cards,
                                   int totalPages,
                                   long totalElements,
                                   boolean first,
-                                  int numberOfElements) {
+                                  int numberOfElements,
+                                  String nextCursor) {
 }
@@ -0,0 +1,4 @@
+package karm.van.dto.card;
+
+public record CardSuggestionDto(Long id, String title) {
+}
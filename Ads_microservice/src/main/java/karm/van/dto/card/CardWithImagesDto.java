@@ -0,0 +1,6 @@
+package karm.van.dto.card;
+
+import java.util.List;
+
+public record CardWithImagesDto(CardDto cardDto, List<Long> imageIds) {
+}
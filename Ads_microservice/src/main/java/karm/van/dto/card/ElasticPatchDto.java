@@ -1,4 +1,6 @@
 package karm.van.dto.card;
 
-public record ElasticPatchDto(Long id, CardDto cardDto) {
+import java.util.List;
+
+public record ElasticPatchDto(Long id, CardDto cardDto, List<Long> imgIds, Long version) {
 }
@@ -0,0 +1,13 @@
+package karm.van.dto.card;
+
+import java.time.Instant;
+
+public record ReindexStatusDto(boolean running,
+                               String targetIndex,
+                               long indexedCards,
+                               long totalCards,
+                               double cardsPerSecond,
+                               Instant startedAt,
+                               Instant finishedAt,
+                               String error) {
+}
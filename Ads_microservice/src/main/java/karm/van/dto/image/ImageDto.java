@@ -1,4 +1,4 @@
 package karm.van.dto.image;
 
-public record ImageDto(Long id, String imageBucket, String imageName) {
+public record ImageDto(Long id, String imageBucket, String imageName, String thumbnailName, String previewName) {
 }
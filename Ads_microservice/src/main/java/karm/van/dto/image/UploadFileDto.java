@@ -0,0 +1,4 @@
+package karm.van.dto.image;
+
+public record UploadFileDto(String fileName, String contentType) {
+}
@@ -0,0 +1,8 @@
+package karm.van.dto.user;
+
+import java.util.List;
+
+public record UserShortDtoRequest(Long id,
+                                  String name,
+                                  List<String> role) {
+}
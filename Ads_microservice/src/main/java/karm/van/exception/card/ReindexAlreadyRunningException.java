@@ -0,0 +1,9 @@
+package karm.van.exception.card;
+
+public class ReindexAlreadyRunningException extends Exception{
+
+    public ReindexAlreadyRunningException(String message){
+        super(message);
+    }
+
+}
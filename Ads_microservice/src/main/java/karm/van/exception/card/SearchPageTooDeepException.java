@@ -0,0 +1,9 @@
+package karm.van.exception.card;
+
+public class SearchPageTooDeepException extends Exception{
+
+    public SearchPageTooDeepException(String message){
+        super(message);
+    }
+
+}
@@ -0,0 +1,12 @@
+package karm.van.exception.image;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST,reason = "The uploaded image is invalid")
+public class InvalidImageException extends Exception{
+
+    public InvalidImageException(String message){
+        super(message);
+    }
+}
@@ -6,8 +6,12 @@ import lombok.*;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
+import org.springframework.data.elasticsearch.annotations.Setting;
 
 import java.time.LocalDate;
+import java.util.List;
 
 @Getter
 @Setter
@@ -15,13 +19,19 @@ import java.time.LocalDate;
 @AllArgsConstructor
 @Builder
 @Document(indexName = "card_index")
+@Setting(settingPath = "elastic/card-index-settings.json")
 public class CardDocument {
+    private static final int SNIPPET_LENGTH = 200;
 
     @Id
     @Field(type = FieldType.Long)
     private Long id;
 
-    @Field(type = FieldType.Text, analyzer = "custom_russian_english")
+    // title.suggest используется только для подсказок при вводе
+    @MultiField(
+            mainField = @Field(type = FieldType.Text, analyzer = "custom_russian_english"),
+            otherFields = @InnerField(suffix = "suggest", type = FieldType.Search_As_You_Type)
+    )
     private String title;
 
     @Field(type = FieldType.Text, analyzer = "custom_russian_english")
@@ -29,4 +39,24 @@ public class CardDocument {
 
     @Field(type = FieldType.Date)
     private LocalDate createTime;
+
+    // Поля ниже нужны только для вывода результатов поиска без обращения к БД
+    @Field(type = FieldType.Long)
+    private Long userId;
+
+    @Field(type = FieldType.Long, index = false)
+    private List<Long> imgIds;
+
+    @Field(type = FieldType.Text, index = false)
+    private String snippet;
+
+    @Field(type = FieldType.Long, index = false)
+    private Long version;
+
+    public static String snippetOf(String text) {
+        if (text == null || text.length() <= SNIPPET_LENGTH) {
+            return text;
+        }
+        return text.substring(0, SNIPPET_LENGTH);
+    }
 }
@@ -4,6 +4,7 @@ package karm.van.model;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -34,6 +35,12 @@ public class CardModel {
     @ElementCollection
     @CollectionTable(name = "card_images", joinColumns = @JoinColumn(name = "card_id"))
     @Column(name = "image_id")
+    @BatchSize(size = 100)
     private List<Long> imgIds = new ArrayList<>();
 
+    // Растёт при каждом изменении карточки, elastic по нему отбрасывает устаревшие события
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
+
 }
@@ -0,0 +1,34 @@
+package karm.van.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Message written in the same transaction as the card change and published later by {@link karm.van.service.CardOutboxRelay}.
+ * The body is already converted, so the relay sends exactly what {@code RabbitTemplate.convertAndSend} would have sent.
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+@Table(name = "card_outbox")
+public class CardOutboxMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String exchange;
+
+    private String routingKey;
+
+    private String typeId;
+
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,13 @@
+package karm.van.repo.jpaRepo;
+
+import karm.van.model.CardOutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface CardOutboxRepo extends JpaRepository<CardOutboxMessage,Long> {
+    // Несколько экземпляров сервиса разбирают очередь параллельно, не блокируя друг друга
+    @Query(value = "select * from card_outbox order by id limit :limit for update skip locked", nativeQuery = true)
+    List<CardOutboxMessage> lockNextBatch(int limit);
+}
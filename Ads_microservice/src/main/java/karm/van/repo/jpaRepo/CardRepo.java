@@ -1,14 +1,36 @@
 package karm.van.repo.jpaRepo;
 
+import jakarta.persistence.QueryHint;
 import karm.van.model.CardModel;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 public interface CardRepo extends JpaRepository<CardModel,Long> {
     Optional<CardModel> getCardModelById(Long id);
 
     List<CardModel> findAllByUserId(Long userId);
 
+    List<CardModel> findAllByOrderByIdDesc(Limit limit);
+
+    List<CardModel> findAllByIdLessThanOrderByIdDesc(Long id, Limit limit);
+
+    @Query("select distinct c from CardModel c left join fetch c.imgIds where c.id in :ids")
+    List<CardModel> findAllWithImagesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Читается курсором по fetch size строк, вызывать только внутри транзакции
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("select c from CardModel c order by c.id")
+    Stream<CardModel> streamAllOrderById();
+
 }
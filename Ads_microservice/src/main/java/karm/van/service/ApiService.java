@@ -2,7 +2,12 @@ package karm.van.service;
 
 import jakarta.annotation.PostConstruct;
 import karm.van.dto.image.ImageDto;
+import karm.van.dto.image.UploadIntentDto;
+import karm.van.dto.image.UploadSlotDto;
 import karm.van.dto.user.UserDtoRequest;
+import karm.van.dto.user.UserShortDtoRequest;
+import karm.van.http.InternalHttpClient;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
@@ -13,7 +18,10 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
 
 import java.util.List;
 import java.util.Map;
@@ -21,17 +29,38 @@ import java.util.Objects;
 import java.util.stream.Collectors;
 
 
+@RequiredArgsConstructor
 @Component
 @Slf4j
 public class ApiService {
-    private WebClient webClient;
+    private final InternalHttpClient internalHttpClient;
+    private WebClient imageClient;
+    private WebClient authClient;
+    private WebClient commentClient;
 
     @PostConstruct
     public void init() {
-        webClient = WebClient.create();
+        imageClient = internalHttpClient.forService("image");
+        authClient = internalHttpClient.forService("authentication");
+        commentClient = internalHttpClient.forService("comment");
     }
 
-    private <T> T sendPostRequest(String url, Object body, String token, String apiKey, ParameterizedTypeReference<T> responseType) {
+    /**
+     * Waits for a single call or a composition of calls, such as {@code Mono.zip}, within one shared deadline.
+     */
+    public <T> T await(Mono<T> mono) {
+        return mono.block(internalHttpClient.getDeadline());
+    }
+
+    /**
+     * Waits for a file upload, which may take longer than the shared deadline.
+     */
+    public <T> T awaitUpload(Mono<T> mono) {
+        return mono.block(internalHttpClient.getUploadTimeout());
+    }
+
+    // Multipart-запрос несёт файлы, поэтому ответ на него ждётся дольше обычного response-timeout
+    private <T> Mono<T> sendPostRequest(WebClient webClient, String url, Object body, String token, String apiKey, ParameterizedTypeReference<T> responseType) {
         return webClient
                 .post()
                 .uri(url)
@@ -40,13 +69,31 @@ public class ApiService {
                     headers.setBearerAuth(token);
                     headers.set("x-api-key", apiKey);
                 })
+                .httpRequest(request -> {
+                    if (request.getNativeRequest() instanceof HttpClientRequest reactorRequest) {
+                        reactorRequest.responseTimeout(internalHttpClient.getUploadTimeout());
+                    }
+                })
                 .bodyValue(body)
                 .retrieve()
-                .bodyToMono(responseType)
-                .block();
+                .bodyToMono(responseType);
+    }
+
+    private <T> Mono<T> sendPostJsonRequest(WebClient webClient, String url, Object body, String token, String apiKey, ParameterizedTypeReference<T> responseType) {
+        return webClient
+                .post()
+                .uri(url)
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    headers.setBearerAuth(token);
+                    headers.set("x-api-key", apiKey);
+                })
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(responseType);
     }
 
-    private HttpStatusCode sendPostRequest(String url, String token, String apiKey) {
+    private HttpStatusCode sendPostRequest(WebClient webClient, String url, String token, String apiKey) {
         return Objects.requireNonNull(
                 webClient
                     .post()
@@ -58,11 +105,11 @@ public class ApiService {
                     })
                     .retrieve()
                     .toBodilessEntity()
-                    .block()
+                    .block(internalHttpClient.getDeadline())
                 ).getStatusCode();
     }
 
-    private HttpStatusCode sendDeleteRequest(String url, String token, String apiKey) {
+    private HttpStatusCode sendDeleteRequest(WebClient webClient, String url, String token, String apiKey) {
         return Objects.requireNonNull(
                     webClient
                         .delete()
@@ -73,12 +120,12 @@ public class ApiService {
                         })
                         .retrieve()
                         .toBodilessEntity()
-                        .block())
+                        .block(internalHttpClient.getDeadline()))
                 .getStatusCode();
     }
 
 
-    private <T> T sendGetResponse(String uri, String token, ParameterizedTypeReference<T> responseType, String apiKey){
+    private <T> Mono<T> sendGetResponse(WebClient webClient, String uri, String token, ParameterizedTypeReference<T> responseType, String apiKey){
         return webClient
                 .get()
                 .uri(uri)
@@ -87,30 +134,26 @@ public class ApiService {
                     httpHeaders.setBearerAuth(token);
                 })
                 .retrieve()
+                .bodyToMono(responseType);
+    }
+
+    // Пустой ответ означает только отказ вызываемого сервиса (4xx, например пользователь не найден),
+    // таймауты и 5xx пробрасываются, чтобы сбой не выглядел как отсутствие данных
+    private <T> Mono<T> sendGetResponse(WebClient webClient, String uri, String token, Class<T> responseType, String apiKey) {
+        return webClient
+                .get()
+                .uri(uri)
+                .headers(httpHeaders -> {
+                    httpHeaders.setBearerAuth(token);
+                    if (apiKey != null && !apiKey.trim().isEmpty()) {
+                        httpHeaders.set("x-api-key", apiKey);
+                    }
+                })
+                .retrieve()
                 .bodyToMono(responseType)
-                .block();
-    }
-
-    private <T> T sendGetResponse(String uri, String token, Class<T> responseType, String apiKey) {
-        try {
-            return webClient
-                    .get()
-                    .uri(uri)
-                    .headers(httpHeaders -> {
-                        httpHeaders.setBearerAuth(token);
-                        if (apiKey != null && !apiKey.trim().isEmpty()) {
-                            httpHeaders.set("x-api-key", apiKey);
-                        }
-                    })
-                    .retrieve()
-                    .onStatus(HttpStatusCode::isError, clientResponse -> {
-                        throw new RuntimeException();
-                    })
-                    .bodyToMono(responseType)
-                    .block();
-        } catch (Exception e) {
-            return null;
-        }
+                .onErrorResume(WebClientResponseException.class, e -> e.getStatusCode().is4xxClientError()
+                        ? Mono.empty()
+                        : Mono.error(e));
     }
 
     private MultiValueMap<String, HttpEntity<?>> buildMultipartBody(List<MultipartFile> files, int currentCardImagesCount) {
@@ -122,7 +165,12 @@ public class ApiService {
 
 
     public List<Long> postRequestToAddCardImage(List<MultipartFile> files, String url, int currentCardImagesCount, String token, String apiKey) {
+        return awaitUpload(addCardImagesAsync(files, url, currentCardImagesCount, token, apiKey));
+    }
+
+    public Mono<List<Long>> addCardImagesAsync(List<MultipartFile> files, String url, int currentCardImagesCount, String token, String apiKey) {
         return sendPostRequest(
+                imageClient,
                 url,
                 buildMultipartBody(files, currentCardImagesCount),
                 token,
@@ -132,13 +180,39 @@ public class ApiService {
     }
 
 
+    public List<UploadSlotDto> createUploadIntentRequest(UploadIntentDto uploadIntentDto, String url, String token, String apiKey) {
+        return await(sendPostJsonRequest(
+                imageClient,
+                url,
+                uploadIntentDto,
+                token,
+                apiKey,
+                new ParameterizedTypeReference<>() {}
+        ));
+    }
+
+    public Mono<List<Long>> completeUploadAsync(List<Long> imagesId, String url, String token, String apiKey) {
+        return sendPostJsonRequest(
+                imageClient,
+                url,
+                imagesId,
+                token,
+                apiKey,
+                new ParameterizedTypeReference<>() {}
+        );
+    }
+
     public List<ImageDto> getCardImagesRequest(List<Long> imagesId, String url, String token, String apikey) {
+        return await(getCardImagesAsync(imagesId, url, token, apikey));
+    }
 
+    public Mono<List<ImageDto>> getCardImagesAsync(List<Long> imagesId, String url, String token, String apikey) {
         String uri = UriComponentsBuilder.fromHttpUrl(url)
                 .queryParam("imagesId", imagesId)
                 .toUriString();
 
         return sendGetResponse(
+                imageClient,
                 uri,
                 token,
                 new ParameterizedTypeReference<>() {
@@ -147,14 +221,30 @@ public class ApiService {
         );
     }
 
+    public Map<Long, List<ImageDto>> getCardsImagesRequest(Map<Long, List<Long>> cardsImages, String url, String token, String apiKey) {
+        return await(sendPostJsonRequest(
+                imageClient,
+                url,
+                cardsImages,
+                token,
+                apiKey,
+                new ParameterizedTypeReference<>() {
+                }
+        ));
+    }
+
     private UserDtoRequest fetchUserData(String uri, String token, String apiKey) {
-        return sendGetResponse(uri,token, UserDtoRequest.class,apiKey);
+        return await(sendGetResponse(authClient, uri,token, UserDtoRequest.class,apiKey));
     }
 
     public UserDtoRequest getUserByToken(String url, String token, String apiKey) {
         return fetchUserData(url, token, apiKey);
     }
 
+    public Mono<UserDtoRequest> getUserByTokenAsync(String url, String token, String apiKey) {
+        return sendGetResponse(authClient, url, token, UserDtoRequest.class, apiKey);
+    }
+
     public UserDtoRequest getUserById(String url, String token, Long userId, String apiKey) {
         String uri = UriComponentsBuilder.fromHttpUrl(url)
                 .queryParam("userId", userId)
@@ -162,14 +252,24 @@ public class ApiService {
         return fetchUserData(uri, token, apiKey);
     }
 
-    public Boolean validateToken(String token, String url) {
-        Map<?, ?> responseMap = sendGetResponse(url, token, Map.class,null);
-        return responseMap != null && responseMap.containsKey("valid") && (Boolean) responseMap.get("valid");
+    public Map<Long, UserShortDtoRequest> getUsersRequest(List<Long> usersId, String url, String token, String apiKey) {
+        return await(getUsersAsync(usersId, url, token, apiKey));
     }
 
+    public Mono<Map<Long, UserShortDtoRequest>> getUsersAsync(List<Long> usersId, String url, String token, String apiKey) {
+        return sendPostJsonRequest(
+                authClient,
+                url,
+                usersId,
+                token,
+                apiKey,
+                new ParameterizedTypeReference<>() {
+                }
+        );
+    }
 
     public HttpStatusCode requestToDelAllCommentsByCard(String url, String token, String apiKey) {
-        return sendDeleteRequest(url,token,apiKey);
+        return sendDeleteRequest(commentClient, url,token,apiKey);
     }
 
     public void sendDeleteImagesFromMinioRequest(String url, List<Long> imagesId, String token, String apiKey) {
@@ -179,19 +279,19 @@ public class ApiService {
                 .queryParam("ids", ids)
                 .toUriString();
 
-        sendDeleteRequest(fullUrl,token,apiKey);
+        sendDeleteRequest(imageClient, fullUrl,token,apiKey);
     }
 
     public HttpStatusCode requestToDeleteOneImageFromDB(String url, String token, String apiKey) {
-        return sendDeleteRequest(url,token,apiKey);
+        return sendDeleteRequest(imageClient, url,token,apiKey);
     }
 
     public HttpStatusCode requestToUnlinkCardFromUser(String url, String token, String apiKey) {
-        return sendDeleteRequest(url,token,apiKey);
+        return sendDeleteRequest(authClient, url,token,apiKey);
     }
 
-    private HttpStatusCode sendMoveRequest(String url,String token,String apiKey){
-        return sendPostRequest(url,token,apiKey);
+    private HttpStatusCode sendMoveRequest(WebClient webClient, String url,String token,String apiKey){
+        return sendPostRequest(webClient, url,token,apiKey);
     }
 
     private String getIds(List<?> imagesId){
@@ -207,7 +307,7 @@ public class ApiService {
                 .queryParam("ids", ids)
                 .toUriString();
 
-        sendMoveRequest(fullUrl,token,apiKey);
+        sendMoveRequest(imageClient, fullUrl,token,apiKey);
     }
 
     public HttpStatusCode moveImagesToTrashPackage(String url, List<Long> imagesId, String token, String apiKey) {
@@ -218,11 +318,11 @@ public class ApiService {
                 .queryParam("toTrash",true)
                 .toUriString();
 
-        return sendMoveRequest(fullUrl,token,apiKey);
+        return sendMoveRequest(imageClient, fullUrl,token,apiKey);
     }
 
     public HttpStatusCode addCardToUser(String url,String token,String apiKey) throws NullPointerException{
-        return sendPostRequest(url,token,apiKey);
+        return sendPostRequest(authClient, url,token,apiKey);
     }
 
     public String buildUrl(String prefix, String host, String port, String endpoint, Long... ids) {
@@ -4,12 +4,25 @@ import karm.van.dto.card.ElasticPatchDto;
 import karm.van.dto.message.EmailDataDto;
 import karm.van.model.CardDocument;
 import karm.van.model.CardModel;
+import karm.van.model.CardOutboxMessage;
+import karm.van.repo.jpaRepo.CardOutboxRepo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * Messages are not sent to RabbitMQ directly: they are stored in the card_outbox table within the caller's
+ * transaction and published by {@link CardOutboxRelay} after commit. A rolled back change therefore never
+ * reaches the broker, and a slow broker does not slow down the request.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -33,21 +46,34 @@ public class BrokerProducer {
     private String emailRoutingKey;
 
     private final RabbitTemplate rabbitTemplate;
+    private final CardOutboxRepo cardOutboxRepo;
+
+    private void addToOutbox(String exchange, String routingKey, Object payload){
+        Message message = rabbitTemplate.getMessageConverter().toMessage(payload, new MessageProperties());
+
+        cardOutboxRepo.save(CardOutboxMessage.builder()
+                .exchange(exchange)
+                .routingKey(routingKey)
+                .typeId(message.getMessageProperties().getHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME))
+                .payload(new String(message.getBody(), StandardCharsets.UTF_8))
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
 
     public void sendEmailMessage(EmailDataDto emailDataDto){
-        rabbitTemplate.convertAndSend(finderExchange,emailRoutingKey,emailDataDto);
+        addToOutbox(finderExchange,emailRoutingKey,emailDataDto);
     }
 
     public void saveInBroker(CardDocument cardDocument){
-        rabbitTemplate.convertAndSend(elasticExchange,elasticRoutingKeySave,cardDocument);
+        addToOutbox(elasticExchange,elasticRoutingKeySave,cardDocument);
     }
 
     public void saveInBroker(CardModel cardModel){
-        rabbitTemplate.convertAndSend(elasticExchange,elasticRoutingKeyDel,cardModel);
+        addToOutbox(elasticExchange,elasticRoutingKeyDel,cardModel);
     }
 
     public void saveInBroker(ElasticPatchDto elasticPatchDto){
-        rabbitTemplate.convertAndSend(elasticExchange,elasticRoutingKeyPatch,elasticPatchDto);
+        addToOutbox(elasticExchange,elasticRoutingKeyPatch,elasticPatchDto);
     }
 
 }
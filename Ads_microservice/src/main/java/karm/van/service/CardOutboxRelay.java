@@ -0,0 +1,86 @@
+package karm.van.service;
+
+import jakarta.annotation.PostConstruct;
+import karm.van.model.CardOutboxMessage;
+import karm.van.repo.jpaRepo.CardOutboxRepo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Publishes messages from the card_outbox table. A batch is locked with SKIP LOCKED, sent on one channel,
+ * confirmed by the broker with a single wait and only then deleted. If the broker does not confirm,
+ * the transaction rolls back and the batch is sent again later, consumers drop duplicates by card version.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CardOutboxRelay {
+    private final CardOutboxRepo cardOutboxRepo;
+    private final RabbitTemplate rabbitTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${card.outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${card.outbox.confirm-timeout:5000}")
+    private long confirmTimeout;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${card.outbox.poll-interval:200}")
+    public void relay() {
+        try {
+            Integer published;
+            do {
+                published = transactionTemplate.execute(status -> publishNextBatch());
+            } while (published != null && published == batchSize);
+        } catch (Exception e) {
+            log.error("Failed to publish card outbox messages: " + e.getMessage());
+        }
+    }
+
+    private int publishNextBatch() {
+        List<CardOutboxMessage> batch = cardOutboxRepo.lockNextBatch(batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        rabbitTemplate.invoke(operations -> {
+            batch.forEach(outboxMessage -> operations.send(
+                    outboxMessage.getExchange(),
+                    outboxMessage.getRoutingKey(),
+                    toMessage(outboxMessage)));
+            operations.waitForConfirmsOrDie(confirmTimeout);
+            return null;
+        });
+
+        cardOutboxRepo.deleteAllInBatch(batch);
+        return batch.size();
+    }
+
+    private Message toMessage(CardOutboxMessage outboxMessage) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        if (outboxMessage.getTypeId() != null) {
+            properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, outboxMessage.getTypeId());
+        }
+        return new Message(outboxMessage.getPayload().getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
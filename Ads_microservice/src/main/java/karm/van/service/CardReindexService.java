@@ -0,0 +1,402 @@
+package karm.van.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch._types.VersionType;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import karm.van.dto.card.ReindexStatusDto;
+import karm.van.dto.user.UserDtoRequest;
+import karm.van.config.properties.AuthenticationMicroServiceProperties;
+import karm.van.exception.card.ReindexAlreadyRunningException;
+import karm.van.exception.other.TokenNotExistException;
+import karm.van.exception.user.NotEnoughPermissionsException;
+import karm.van.exception.user.UsernameNotFoundException;
+import karm.van.jwt.JwtVerifier;
+import karm.van.model.CardDocument;
+import karm.van.model.CardModel;
+import karm.van.repo.jpaRepo.CardRepo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.Settings;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Full rebuild of the search index from Postgres without search downtime.
+ * Cards are streamed with a server-side cursor into a fresh {@code card_index_v<timestamp>} index
+ * with refresh and replicas disabled, then the {@code card_index} alias is switched to it in one
+ * atomic call. While the rebuild runs, live sync events are mirrored into the new index as well.
+ * A mirrored change can reach the new index before the snapshot row of the same card does, so every
+ * card touched during the rebuild is reloaded from Postgres once more before the alias is switched.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CardReindexService {
+    private static final String ALIAS = "card_index";
+    private static final int MAX_CATCH_UP_ROUNDS = 5;
+
+    private final CardRepo cardRepo;
+    private final EntityManager entityManager;
+    private final PlatformTransactionManager transactionManager;
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ApiService apiService;
+    private final JwtVerifier jwtVerifier;
+    private final AuthenticationMicroServiceProperties authProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong indexedCards = new AtomicLong();
+    private final AtomicLong totalCards = new AtomicLong();
+    private final Set<Long> changedCards = ConcurrentHashMap.newKeySet();
+    private final ExecutorService reindexExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "card-reindex");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile String targetIndex;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private Timer bulkTimer;
+    private TransactionTemplate readOnlyTransaction;
+
+    @Value("${microservices.x-api-key}")
+    private String apiKey;
+
+    @Value("${card.reindex.bulk-size:500}")
+    private int bulkSize;
+
+    @Value("${card.reindex.replicas:0}")
+    private int replicas;
+
+    @PostConstruct
+    public void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        Gauge.builder("finder.card.reindex.indexed", indexedCards, AtomicLong::get)
+                .description("Cards written into the index being rebuilt")
+                .register(meterRegistry);
+        Gauge.builder("finder.card.reindex.total", totalCards, AtomicLong::get)
+                .description("Cards to be written into the index being rebuilt")
+                .register(meterRegistry);
+        Gauge.builder("finder.card.reindex.rate", this, CardReindexService::cardsPerSecond)
+                .description("Cards indexed per second by the current rebuild")
+                .register(meterRegistry);
+        Gauge.builder("finder.card.reindex.running", running, flag -> flag.get() ? 1 : 0)
+                .register(meterRegistry);
+        bulkTimer = Timer.builder("finder.card.reindex.bulk")
+                .description("Duration of one bulk request of the rebuild")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reindexExecutor.shutdownNow();
+    }
+
+    private void checkToken(String token) throws TokenNotExistException {
+        if (!jwtVerifier.isValidAccessToken(token)){
+            throw new TokenNotExistException("Invalid token or expired");
+        }
+    }
+
+    private void checkUserPermissions(String token) throws UsernameNotFoundException, NotEnoughPermissionsException {
+        UserDtoRequest user = apiService.getUserByToken(apiService.buildUrl(
+                authProperties.getPrefix(),
+                authProperties.getHost(),
+                authProperties.getPort(),
+                authProperties.getEndpoints().getUser()
+        ), token,apiKey);
+
+        if (user == null) {
+            throw new UsernameNotFoundException("User with this token doesn't exist");
+        }
+
+        if (user.role().stream().noneMatch(role->role.equals("ROLE_ADMIN"))){
+            throw new NotEnoughPermissionsException("You don't have permission to do this");
+        }
+    }
+
+    /**
+     * Index that live sync events should also be written to, present only while a rebuild is running.
+     */
+    public Optional<String> getMirrorIndex() {
+        return Optional.ofNullable(targetIndex);
+    }
+
+    /**
+     * Remembers cards changed by live sync events while a rebuild is running, they are reloaded before the alias swap.
+     */
+    public void recordChanges(Collection<Long> cardsId) {
+        if (targetIndex != null) {
+            changedCards.addAll(cardsId);
+        }
+    }
+
+    public ReindexStatusDto startReindex(String authorization) throws TokenNotExistException, UsernameNotFoundException, NotEnoughPermissionsException, ReindexAlreadyRunningException {
+        String token = authorization.substring(7);
+        checkToken(token);
+        checkUserPermissions(token);
+
+        if (!running.compareAndSet(false, true)) {
+            throw new ReindexAlreadyRunningException("Reindex is already running");
+        }
+
+        indexedCards.set(0);
+        totalCards.set(0);
+        startedAt = Instant.now();
+        finishedAt = null;
+        error = null;
+        changedCards.clear();
+
+        String index = ALIAS + "_v" + startedAt.toEpochMilli();
+        try {
+            createIndex(index);
+        } catch (RuntimeException e) {
+            fail(e);
+            throw e;
+        }
+        // События синхронизации пишутся в новый индекс ещё до начала чтения из БД, чтобы не потерять изменения
+        targetIndex = index;
+
+        reindexExecutor.execute(() -> {
+            try {
+                reindex(index);
+            } catch (Exception e) {
+                log.error("Reindex into " + index + " failed: " + e.getMessage());
+                dropIndex(index);
+                fail(e);
+            }
+        });
+
+        return buildStatus();
+    }
+
+    public ReindexStatusDto getStatus(String authorization) throws TokenNotExistException, UsernameNotFoundException, NotEnoughPermissionsException {
+        String token = authorization.substring(7);
+        checkToken(token);
+        checkUserPermissions(token);
+
+        return buildStatus();
+    }
+
+    private ReindexStatusDto buildStatus() {
+        return new ReindexStatusDto(
+                running.get(),
+                targetIndex,
+                indexedCards.get(),
+                totalCards.get(),
+                cardsPerSecond(),
+                startedAt,
+                finishedAt,
+                error);
+    }
+
+    private double cardsPerSecond() {
+        Instant start = startedAt;
+        if (start == null) {
+            return 0;
+        }
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        long millis = Math.max(Duration.between(start, end).toMillis(), 1);
+        return indexedCards.get() * 1000.0 / millis;
+    }
+
+    private void fail(Exception e) {
+        targetIndex = null;
+        error = e.getMessage();
+        finishedAt = Instant.now();
+        running.set(false);
+    }
+
+    private void createIndex(String index) {
+        IndexOperations indexOperations = elasticsearchOperations.indexOps(IndexCoordinates.of(index));
+        Settings settings = indexOperations.createSettings(CardDocument.class);
+        // На время заливки обновление и реплики отключены, после заливки они возвращаются
+        settings.put("refresh_interval", "-1");
+        settings.put("number_of_replicas", 0);
+        indexOperations.create(settings, indexOperations.createMapping(CardDocument.class));
+    }
+
+    private void dropIndex(String index) {
+        try {
+            elasticsearchClient.indices().delete(delete -> delete.index(index));
+        } catch (Exception e) {
+            log.error("Failed to delete unfinished index " + index + ": " + e.getMessage());
+        }
+    }
+
+    private void reindex(String index) throws IOException {
+        totalCards.set(cardRepo.count());
+
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<CardModel> cards = cardRepo.streamAllOrderById()) {
+                List<CardModel> chunk = new ArrayList<>(bulkSize);
+                cards.forEach(card -> {
+                    chunk.add(card);
+                    if (chunk.size() >= bulkSize) {
+                        indexChunk(index, chunk);
+                    }
+                });
+                if (!chunk.isEmpty()) {
+                    indexChunk(index, chunk);
+                }
+            }
+        });
+
+        catchUp(index);
+
+        elasticsearchClient.indices().putSettings(put -> put
+                .index(index)
+                .settings(settings -> settings
+                        .refreshInterval(Time.of(time -> time.time("1s")))
+                        .numberOfReplicas(String.valueOf(replicas))));
+        elasticsearchClient.indices().refresh(refresh -> refresh.index(index));
+
+        swapAlias(index);
+
+        targetIndex = null;
+        finishedAt = Instant.now();
+        running.set(false);
+        log.info("Reindex into " + index + " finished: " + indexedCards.get() + " cards");
+    }
+
+    private void indexChunk(String index, List<CardModel> chunk) {
+        bulkIndex(index, chunk);
+
+        indexedCards.addAndGet(chunk.size());
+        chunk.clear();
+        // Отсоединяем прочитанные карточки, чтобы память не росла вместе с таблицей
+        entityManager.clear();
+    }
+
+    // Изменение, пришедшее раньше строки из снимка, получало 404 или перезаписывалось старой строкой, поэтому такие карточки читаются заново
+    private void catchUp(String index) throws IOException {
+        for (int round = 0; round < MAX_CATCH_UP_ROUNDS && !changedCards.isEmpty(); round++) {
+            List<Long> cardsId = new ArrayList<>(changedCards);
+            changedCards.removeAll(cardsId);
+
+            List<CardModel> cards = readOnlyTransaction.execute(status -> {
+                List<CardModel> found = cardRepo.findAllById(cardsId);
+                if (!found.isEmpty()) {
+                    bulkIndex(index, found);
+                }
+                return found;
+            });
+
+            Set<Long> existing = cards.stream().map(CardModel::getId).collect(Collectors.toSet());
+            List<Long> deleted = cardsId.stream().filter(id -> !existing.contains(id)).toList();
+            if (!deleted.isEmpty()) {
+                // id карточек не переиспользуются, поэтому удалённую можно убирать без версии
+                elasticsearchClient.bulk(bulk -> bulk.index(index).operations(deleted.stream()
+                        .map(id -> BulkOperation.of(op -> op.delete(delete -> delete.id(id.toString()))))
+                        .toList()));
+            }
+            log.info("Reindex catch-up round " + (round + 1) + ": " + cardsId.size() + " changed cards");
+        }
+    }
+
+    private void bulkIndex(String index, List<CardModel> cards) {
+        BulkRequest.Builder bulk = new BulkRequest.Builder().index(index);
+
+        for (CardModel card : cards) {
+            CardDocument document = CardDocument.builder()
+                    .id(card.getId())
+                    .title(card.getTitle())
+                    .text(card.getText())
+                    .createTime(card.getCreateTime())
+                    .userId(card.getUserId())
+                    .imgIds(List.copyOf(card.getImgIds()))
+                    .snippet(CardDocument.snippetOf(card.getText()))
+                    .version(card.getVersion())
+                    .build();
+            Map<String, Object> source = elasticsearchOperations.getElasticsearchConverter().mapObject(document);
+
+            bulk.operations(op -> op.index(operation -> {
+                operation.id(card.getId().toString()).document(source);
+                if (document.getVersion() != null) {
+                    operation.versionType(VersionType.External).version(document.getVersion());
+                }
+                return operation;
+            }));
+        }
+
+        BulkResponse response = bulkTimer.record(() -> {
+            try {
+                return elasticsearchClient.bulk(bulk.build());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        if (response != null && response.errors()) {
+            for (BulkResponseItem item : response.items()) {
+                // 409 - событие синхронизации уже записало более новую версию карточки
+                if (item.error() != null && item.status() != 409) {
+                    log.error("Error reindexing card " + item.id() + ": " + item.error().reason());
+                }
+            }
+        }
+    }
+
+    private void swapAlias(String index) throws IOException {
+        List<Action> actions = new ArrayList<>();
+        actions.add(Action.of(action -> action.add(add -> add.index(index).alias(ALIAS))));
+
+        for (String oldIndex : indicesBehindAlias()) {
+            if (!oldIndex.equals(index)) {
+                actions.add(Action.of(action -> action.removeIndex(remove -> remove.index(oldIndex))));
+            }
+        }
+
+        elasticsearchClient.indices().updateAliases(update -> update.actions(actions));
+    }
+
+    // Раньше card_index был обычным индексом, тогда он удаляется в том же запросе, в котором создаётся алиас
+    private Set<String> indicesBehindAlias() throws IOException {
+        if (elasticsearchClient.indices().existsAlias(exists -> exists.name(ALIAS)).value()) {
+            return elasticsearchClient.indices().getAlias(alias -> alias.name(ALIAS)).result().keySet();
+        }
+
+        if (elasticsearchClient.indices().exists(exists -> exists.index(ALIAS)).value()) {
+            return Set.of(ALIAS);
+        }
+        return Set.of();
+    }
+}
@@ -3,29 +3,41 @@ package karm.van.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
+import karm.van.cache.CacheLoadException;
+import karm.van.cache.NearCache;
+import karm.van.cache.ValueLoader;
 import karm.van.dto.complaint.ComplaintType;
 import karm.van.config.properties.AuthenticationMicroServiceProperties;
 import karm.van.config.properties.CommentMicroServiceProperties;
 import karm.van.config.properties.ImageMicroServiceProperties;
 import karm.van.dto.card.CardDto;
+import karm.van.dto.card.CardFeedResponseDto;
 import karm.van.dto.card.CardPageResponseDto;
+import karm.van.dto.card.CardWithImagesDto;
 import karm.van.dto.card.ElasticPatchDto;
 import karm.van.dto.card.FullCardDtoForOutput;
 import karm.van.dto.image.ImageDto;
+import karm.van.dto.image.UploadFileDto;
+import karm.van.dto.image.UploadIntentDto;
+import karm.van.dto.image.UploadSlotDto;
 import karm.van.dto.message.EmailDataDto;
 import karm.van.dto.user.UserDtoRequest;
+import karm.van.dto.user.UserShortDtoRequest;
 import karm.van.exception.card.CardNotFoundException;
 import karm.van.exception.card.CardNotSavedException;
 import karm.van.exception.card.CardNotUnlinkException;
+import karm.van.exception.card.InvalidCursorException;
 import karm.van.exception.comment.CommentNotDeletedException;
 import karm.van.exception.image.ImageLimitException;
 import karm.van.exception.image.ImageNotDeletedException;
 import karm.van.exception.image.ImageNotMovedException;
 import karm.van.exception.image.ImageNotSavedException;
+import karm.van.exception.image.InvalidImageException;
 import karm.van.exception.other.SerializationException;
 import karm.van.exception.other.TokenNotExistException;
 import karm.van.exception.user.NotEnoughPermissionsException;
 import karm.van.exception.user.UsernameNotFoundException;
+import karm.van.jwt.JwtVerifier;
 import karm.van.model.CardDocument;
 import karm.van.model.CardModel;
 import karm.van.repo.jpaRepo.CardRepo;
@@ -33,38 +45,52 @@ import karm.van.repo.jpaRepo.ComplaintRepo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
-import redis.clients.jedis.JedisPooled;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CardService {
+    private static final String CARDS_GENERATION_KEY = "cards:generation";
+    private static final String CURSOR_PREFIX = "id:";
+    private static final int MAX_FEED_LIMIT = 50;
     private final CardRepo cardRepo;
-    private JedisPooled redis;
+    private final NearCache nearCache;
     private final ObjectMapper objectMapper;
     private final CommentMicroServiceProperties commentProperties;
     private final ImageMicroServiceProperties imageProperties;
     private final AuthenticationMicroServiceProperties authenticationProperties;
     private final ApiService apiService;
+    private final JwtVerifier jwtVerifier;
     private final ComplaintRepo complaintRepo;
     private final BrokerProducer brokerProducer;
-
-    @Value("${redis.host}")
-    private String redisHost;
+    private final UserDirectoryService userDirectoryService;
+    private final PlatformTransactionManager transactionManager;
+    private TransactionTemplate readOnlyTransaction;
 
     @Value("${microservices.x-api-key}")
     private String apiKey;
@@ -75,9 +101,22 @@ public class CardService {
     @Value("${email.settings.send}")
     private boolean send;
 
+    @Value("${card.cache.soft-ttl}")
+    private long cacheSoftTtl;
+
+    @Value("${card.cache.hard-ttl}")
+    private long cacheHardTtl;
+
+    @Value("${card.cache.page-soft-ttl}")
+    private long pageCacheSoftTtl;
+
+    @Value("${card.cache.page-hard-ttl}")
+    private long pageCacheHardTtl;
+
     @PostConstruct
     public void init(){
-        redis = new JedisPooled(redisHost,6379);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
     }
 
     private CardModel addCardText(CardDto cardDto) throws CardNotSavedException {
@@ -111,21 +150,47 @@ public class CardService {
             cardModel.setTitle(title);
             cardModel.setText(text);
 
-            cardRepo.save(cardModel);
+            cardRepo.saveAndFlush(cardModel);
         }catch (CardNotSavedException e){
             log.debug("Card has not been saved: "+e.getMessage());
             throw new CardNotSavedException(e.getMessage());
         }
     }
 
+    private String cardsGeneration() {
+        return nearCache.get(CARDS_GENERATION_KEY).orElse("0");
+    }
+
+    // Страницы прошлого поколения перестают читаться сразу после фиксации изменения, поэтому их можно хранить долго
+    private void bumpCardsGeneration() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    nearCache.incr(CARDS_GENERATION_KEY);
+                }
+            });
+        } else {
+            nearCache.incr(CARDS_GENERATION_KEY);
+        }
+    }
+
+    // Пока транзакция не зафиксирована, параллельный запрос прочитал бы старую строку и снова положил её в кэш
+    private void evictCard(String key) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    nearCache.del(key);
+                }
+            });
+        } else {
+            nearCache.del(key);
+        }
+    }
+
     private void checkToken(String token) throws TokenNotExistException {
-        if (!apiService.validateToken(token,
-                apiService.buildUrl(authenticationProperties.getPrefix(),
-                        authenticationProperties.getHost(),
-                        authenticationProperties.getPort(),
-                        authenticationProperties.getEndpoints().getValidateToken()
-                )
-        )){
+        if (!jwtVerifier.isValidAccessToken(token)){
             throw new TokenNotExistException("Invalid token or expired");
         }
     }
@@ -145,34 +210,39 @@ public class CardService {
         return user;
     }
 
-    private UserDtoRequest requestToGetUserById(String token, Long userId) throws UsernameNotFoundException {
-        UserDtoRequest user = apiService.getUserById(apiService.buildUrl(
+    private Mono<UserDtoRequest> requestToGetUserByTokenAsync(String token) {
+        return apiService.getUserByTokenAsync(apiService.buildUrl(
                 authenticationProperties.getPrefix(),
                 authenticationProperties.getHost(),
                 authenticationProperties.getPort(),
                 authenticationProperties.getEndpoints().getUser()
-        ), token,userId,apiKey);
-
-        if (user == null) {
-            throw new UsernameNotFoundException("User not found");
-        }
-
-        return user;
+        ), token,apiKey)
+                .switchIfEmpty(Mono.error(() -> new UsernameNotFoundException("User not found")));
     }
 
-    private List<Long> requestToAddCardImages(List<MultipartFile> files, String token) throws ImageNotSavedException {
+    private Mono<List<Long>> requestToAddCardImages(List<MultipartFile> files, String token) {
         String url = apiService.buildUrl(imageProperties.getPrefix(),
                 imageProperties.getHost(),
                 imageProperties.getPort(),
                 imageProperties.getEndpoints().getAddCardImages());
 
-        List<Long> imagesId = apiService.postRequestToAddCardImage(files, url, 0, token,apiKey);
+        return apiService.addCardImagesAsync(files, url, 0, token,apiKey)
+                .filter(imagesId -> !imagesId.isEmpty())
+                .switchIfEmpty(Mono.error(() -> new ImageNotSavedException("Image IDs not returned")));
+    }
 
-        if (imagesId == null || imagesId.isEmpty()) {
-            throw new ImageNotSavedException("Image IDs not returned");
-        }
+    private Mono<List<Long>> requestToCompleteImagesUpload(List<Long> imageIds, String token) {
+        String url = apiService.buildUrl(imageProperties.getPrefix(),
+                imageProperties.getHost(),
+                imageProperties.getPort(),
+                imageProperties.getEndpoints().getCompleteUpload());
 
-        return imagesId;
+        return apiService.completeUploadAsync(imageIds, url, token, apiKey)
+                .onErrorMap(WebClientResponseException.class, e -> e.getStatusCode().is4xxClientError()
+                        ? new InvalidImageException(e.getResponseBodyAsString())
+                        : new ImageNotSavedException("Uploaded images were not confirmed"))
+                .filter(imagesId -> !imagesId.isEmpty())
+                .switchIfEmpty(Mono.error(() -> new ImageNotSavedException("Image IDs not returned")));
     }
 
     private void requestToLinkCardAndUser(CardModel cardModel, String token) throws CardNotSavedException {
@@ -195,7 +265,6 @@ public class CardService {
 
     }
 
-    @Async
     protected void rollBackCard(Long cardId, String token) throws CardNotSavedException, CardNotFoundException {
         CardModel cardModel = cardRepo.getCardModelById(cardId).orElseThrow(()->new CardNotFoundException("Card with this id doesn't found"));
         requestToLinkCardAndUser(cardModel,token);
@@ -210,24 +279,21 @@ public class CardService {
         ), imageIds, token, apiKey);
     }
 
-    @Async
-    protected void requestToDeleteImagesFromMinioAsync(List<Long> imageIds,String token){
-        requestToDeleteImagesFromMinio(imageIds,token);
-    }
-
-    @Async
     protected void addCardIntoElastic(CardModel cardModel){
         CardDocument cardDocument = CardDocument.builder()
                 .id(cardModel.getId())
                 .title(cardModel.getTitle())
                 .text(cardModel.getText())
                 .createTime(cardModel.getCreateTime())
+                .userId(cardModel.getUserId())
+                .imgIds(List.copyOf(cardModel.getImgIds()))
+                .snippet(CardDocument.snippetOf(cardModel.getText()))
+                .version(cardModel.getVersion())
                 .build();
 
         brokerProducer.saveInBroker(cardDocument);
     }
 
-    @Async
     protected void sendMessage(EmailDataDto emailDataDto){
         brokerProducer.sendEmailMessage(emailDataDto);
     }
@@ -245,49 +311,150 @@ public class CardService {
                 throw new ImageLimitException("You have provided more than " + allowedImagesCount + " images");
             }
 
-            UserDtoRequest user = requestToGetUserByToken(token);
-            CardModel cardModel = addCardText(cardDto);
-            imageIds = requestToAddCardImages(files,token);
+            // Пользователь запрашивается до загрузки: отмена уже дошедшей до сервиса картинок загрузки оставила бы картинки без карточки
+            UserDtoRequest user;
+            try {
+                user = apiService.await(requestToGetUserByTokenAsync(token));
+                imageIds = apiService.awaitUpload(requestToAddCardImages(files,token));
+            } catch (RuntimeException e) {
+                Throwable cause = Exceptions.unwrap(e);
+                if (cause instanceof UsernameNotFoundException ex) throw ex;
+                if (cause instanceof ImageNotSavedException ex) throw ex;
+                throw e;
+            }
 
-            cardModel.setImgIds(imageIds);
-            cardModel.setUserId(user.id());
-            cardRepo.save(cardModel);
+            saveNewCard(cardDto, user, imageIds, token);
 
-            requestToLinkCardAndUser(cardModel,token);
-            addCardIntoElastic(cardModel);
+        } catch (ImageNotSavedException | ImageLimitException | UsernameNotFoundException | TokenNotExistException e) {
+            log.debug("in class - " + e.getClass() + " an error has occurred: " + e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            if (!imageIds.isEmpty()) {
+                requestToDeleteImagesFromMinio(imageIds,token);
+            }
+            log.error("class: " + e.getClass() + ", message: " + e.getMessage());
+            throw new RuntimeException("Unexpected error occurred", e);
+        }
+    }
+
+    public List<UploadSlotDto> createImagesUploadIntent(List<UploadFileDto> files, String authorization) throws TokenNotExistException, ImageLimitException, InvalidImageException {
+        String token = authorization.substring(7);
+        checkToken(token);
+
+        if (files.size() > allowedImagesCount) {
+            throw new ImageLimitException("You have provided more than " + allowedImagesCount + " images");
+        }
+
+        String url = apiService.buildUrl(imageProperties.getPrefix(),
+                imageProperties.getHost(),
+                imageProperties.getPort(),
+                imageProperties.getEndpoints().getUploadIntent());
+
+        try {
+            return apiService.createUploadIntentRequest(new UploadIntentDto(files, 0), url, token, apiKey);
+        } catch (WebClientResponseException e) {
+            if (e.getStatusCode().is4xxClientError()) {
+                throw new InvalidImageException(e.getResponseBodyAsString());
+            }
+            throw e;
+        }
+    }
 
-            if (send){
-                sendMessage(new EmailDataDto(user.email(),cardDto));
+    /**
+     * Creates a card from images the client has already put into storage by the presigned URLs from
+     * {@link #createImagesUploadIntent}. The image service checks that every image exists, fits the size limit
+     * and belongs to the same user, so the card never references an upload that did not finish.
+     */
+    @Transactional
+    public void addCardWithUploadedImages(CardWithImagesDto cardWithImagesDto, String authorization)
+            throws ImageNotSavedException, CardNotSavedException, ImageLimitException, TokenNotExistException, UsernameNotFoundException, InvalidImageException {
+        String token = authorization.substring(7);
+        List<Long> imageIds = cardWithImagesDto.imageIds() == null ? List.of() : cardWithImagesDto.imageIds();
+        List<Long> uploadedImageIds = List.of();
+        try {
+            checkToken(token);
+
+            if (imageIds.size() > allowedImagesCount) {
+                throw new ImageLimitException("You have provided more than " + allowedImagesCount + " images");
             }
 
-        } catch (ImageNotSavedException | ImageLimitException | UsernameNotFoundException | TokenNotExistException e) {
+            // Как и при обычной загрузке, подтверждение не запускается, пока не найден пользователь
+            UserDtoRequest user;
+            try {
+                user = apiService.await(requestToGetUserByTokenAsync(token));
+                uploadedImageIds = apiService.await(requestToCompleteImagesUpload(imageIds,token));
+            } catch (RuntimeException e) {
+                Throwable cause = Exceptions.unwrap(e);
+                if (cause instanceof UsernameNotFoundException ex) throw ex;
+                if (cause instanceof InvalidImageException ex) throw ex;
+                if (cause instanceof ImageNotSavedException ex) throw ex;
+                throw e;
+            }
+
+            saveNewCard(cardWithImagesDto.cardDto(), user, uploadedImageIds, token);
+
+        } catch (ImageNotSavedException | ImageLimitException | UsernameNotFoundException | TokenNotExistException | InvalidImageException e) {
             log.debug("in class - " + e.getClass() + " an error has occurred: " + e.getMessage());
             throw e;
         } catch (Exception e) {
-            if (!imageIds.isEmpty()) {
-                requestToDeleteImagesFromMinioAsync(imageIds,token);
+            // Подтверждённые картинки уже не считаются брошенными загрузками, без карточки их никто не удалит
+            if (!uploadedImageIds.isEmpty()) {
+                requestToDeleteImagesFromMinio(uploadedImageIds,token);
             }
             log.error("class: " + e.getClass() + ", message: " + e.getMessage());
             throw new RuntimeException("Unexpected error occurred", e);
         }
     }
-    //todo сделать кеширование в отдельном потоке, когда уже информация найдена и отдана
+
+    private void saveNewCard(CardDto cardDto, UserDtoRequest user, List<Long> imageIds, String token) throws CardNotSavedException {
+        CardModel cardModel = addCardText(cardDto);
+
+        cardModel.setImgIds(imageIds);
+        cardModel.setUserId(user.id());
+        cardRepo.saveAndFlush(cardModel);
+
+        requestToLinkCardAndUser(cardModel,token);
+        addCardIntoElastic(cardModel);
+        bumpCardsGeneration();
+
+        if (send){
+            sendMessage(new EmailDataDto(user.email(),cardDto));
+        }
+    }
+
     public FullCardDtoForOutput getCard(Long id, String authorization) throws CardNotFoundException, SerializationException, TokenNotExistException, UsernameNotFoundException {
         String token = authorization.substring(7);
         checkToken(token);
         String key = "card%d".formatted(id);
-        if (!redis.exists(key)) {//Если кеш отсутствует
-            return cacheCard(id,key,token);
-        } else {//Если кеш найден
+        try {
+            // Устаревшая карточка отдаётся сразу, а обновляется в фоне
+            String card = nearCache.getOrLoad(key, cacheSoftTtl, cacheHardTtl,
+                    () -> inReadOnlyTransaction(() -> serializeCard(id,token)));
+            return objectMapper.readValue(card, FullCardDtoForOutput.class);//Десериализуем строку в объект и возвращаем
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("an error occurred during serialization");
+        } catch (CacheLoadException e) {
+            if (e.getCause() instanceof CardNotFoundException ex) throw ex;
+            if (e.getCause() instanceof UsernameNotFoundException ex) throw ex;
+            if (e.getCause() instanceof SerializationException ex) throw ex;
+            throw e;
+        }
+    }
+
+    // Загрузчик кеша может выполняться в фоновом потоке, где нет открытой сессии для ленивых коллекций
+    private String inReadOnlyTransaction(ValueLoader loader) {
+        return readOnlyTransaction.execute(status -> {
             try {
-                return objectMapper.readValue(redis.get(key), FullCardDtoForOutput.class);//Десериализуем строку в объект и возвращаем
-            } catch (JsonProcessingException e) {
-                throw new SerializationException("an error occurred during serialization");
+                return loader.load();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CacheLoadException(e);
             }
-        }
+        });
     }
 
-    private List<ImageDto> requestToGetAllCardImages(CardModel card, String token){
+    private Mono<List<ImageDto>> requestToGetAllCardImages(CardModel card, String token){
         String url = apiService.buildUrl(
                 imageProperties.getPrefix(),
                 imageProperties.getHost(),
@@ -295,10 +462,25 @@ public class CardService {
                 imageProperties.getEndpoints().getGetImages()
         );
 
-        return apiService.getCardImagesRequest(card.getImgIds(),url,token,apiKey);
+        return apiService.getCardImagesAsync(List.copyOf(card.getImgIds()),url,token,apiKey)
+                .defaultIfEmpty(List.of());
+    }
+
+    private Map<Long, List<ImageDto>> requestToGetCardsImages(List<CardModel> cards, String token){
+        String url = apiService.buildUrl(
+                imageProperties.getPrefix(),
+                imageProperties.getHost(),
+                imageProperties.getPort(),
+                imageProperties.getEndpoints().getGetCardsImages()
+        );
+
+        Map<Long, List<Long>> cardsImages = cards.stream()
+                .collect(Collectors.toMap(CardModel::getId, CardModel::getImgIds));
+
+        return apiService.getCardsImagesRequest(cardsImages,url,token,apiKey);
     }
 
-    private FullCardDtoForOutput cacheCard(Long cardId, String key, String token) throws CardNotFoundException, SerializationException, UsernameNotFoundException {
+    private String serializeCard(Long cardId, String token) throws CardNotFoundException, SerializationException, UsernameNotFoundException {
         Optional<CardModel> cardModelOptional = cardRepo.getCardModelById(cardId);//Ищем запись в БД
 
         if (cardModelOptional.isEmpty()) {//Если записи в БД нет
@@ -306,24 +488,29 @@ public class CardService {
         }
 
         CardModel card = cardModelOptional.get();
-        String objectAsString;
 
-        List<ImageDto> images = requestToGetAllCardImages(card,token);
+        // Картинки и автор запрашиваются одновременно, ошибка в одном запросе отменяет второй
+        Tuple2<List<ImageDto>, UserShortDtoRequest> imagesAndAuthor;
+        try {
+            imagesAndAuthor = apiService.await(Mono.zip(
+                    requestToGetAllCardImages(card,token),
+                    userDirectoryService.getUserAsync(card.getUserId(),token)));
+        } catch (RuntimeException e) {
+            if (Exceptions.unwrap(e) instanceof UsernameNotFoundException ex) throw ex;
+            throw e;
+        }
 
-        String userName = requestToGetUserById(token,card.getUserId()).name();
+        List<ImageDto> images = imagesAndAuthor.getT1();
+        String userName = imagesAndAuthor.getT2().name();
 
         FullCardDtoForOutput fullCardDtoForOutput = new FullCardDtoForOutput(card.getId(),card.getTitle(),card.getText(),card.getCreateTime(),images,userName);
 
         try {
-            objectAsString = objectMapper.writeValueAsString(fullCardDtoForOutput);//Сериализуем объект в строку
+            return objectMapper.writeValueAsString(fullCardDtoForOutput);//Сериализуем объект в строку
         } catch (Exception e) {
             log.error("An error occurred during serialization for redis: "+e.getMessage());
             throw new SerializationException("an error occurred during serialization");
         }
-
-        redis.set(key, objectAsString);//Кешируем объект
-        redis.expire(key, 60);//Устанавливаем время жизни
-        return fullCardDtoForOutput;
     }
 
     private void moveImagesToTrashBucket(List<Long> imagesId, String token) throws ImageNotMovedException {
@@ -362,7 +549,6 @@ public class CardService {
         }
     }
 
-    @Async
     protected void rollBackImages(List<Long> imagesId, String token){
         String imageUrl = apiService.buildUrl(
                 imageProperties.getPrefix(),
@@ -406,7 +592,6 @@ public class CardService {
         }
     }
     
-    @Async
     protected void delCardIntoElastic(CardModel cardModel) {
         brokerProducer.saveInBroker(cardModel);
     }
@@ -427,19 +612,16 @@ public class CardService {
 
         List<Long> imagesId = cardModel.getImgIds();
 
-        if (redis.exists(key)) {
-            redis.del(key);
-        }
+        evictCard(key);
 
         try {
             requestToUnlinkCardFromUser(token,cardId);
             moveImagesToTrashBucket(imagesId,token);
             sendRequestToDellAllComments(cardId,token);
 
-            requestToDeleteImagesFromMinio(imagesId,token);
-
             cardRepo.deleteById(cardId);
             delCardIntoElastic(cardModel);
+            bumpCardsGeneration();
         } catch (ImageNotMovedException e) {
             rollBackCard(cardId,token);
             throw e;
@@ -454,41 +636,44 @@ public class CardService {
     }
 
 
-    private List<FullCardDtoForOutput> getFullCardsDto(String token, Page<CardModel> page){
-        return page.getContent().stream()
+    private List<FullCardDtoForOutput> getFullCardsDto(String token, List<CardModel> cards){
+        Map<Long, List<ImageDto>> cardsImages = requestToGetCardsImages(cards,token);
+        Map<Long, UserShortDtoRequest> authors = userDirectoryService.getUsers(
+                cards.stream().map(CardModel::getUserId).toList(),token);
+
+        return cards.stream()
                 .map(card -> {
-                    try {
-                        return new FullCardDtoForOutput(
-                                card.getId(),
-                                card.getTitle(),
-                                card.getText(),
-                                card.getCreateTime(),
-                                requestToGetAllCardImages(card,token),
-                                requestToGetUserById(token,card.getUserId()).name());
-                    } catch (UsernameNotFoundException e) {
-                        throw new RuntimeException(e);
+                    UserShortDtoRequest author = authors.get(card.getUserId());
+
+                    if (author == null) {
+                        throw new RuntimeException(new UsernameNotFoundException("User not found"));
                     }
+
+                    return new FullCardDtoForOutput(
+                            card.getId(),
+                            card.getTitle(),
+                            card.getText(),
+                            card.getCreateTime(),
+                            cardsImages.getOrDefault(card.getId(), List.of()),
+                            author.name());
                 }).toList();
     }
 
-    public CardPageResponseDto cachingAndCreateDto(Page<CardModel> page, String token, String redisKey) throws SerializationException {
+    private String serializePage(Page<CardModel> page, String token) throws SerializationException {
         CardPageResponseDto cardPageResponseDto = new CardPageResponseDto(
-                getFullCardsDto(token,page),
+                getFullCardsDto(token,page.getContent()),
                 page.isLast(),
                 page.getTotalPages(),
                 page.getTotalElements(),
                 page.isFirst(),
-                page.getNumberOfElements());
+                page.getNumberOfElements(),
+                null);
 
         try {
-            String objectAsString = objectMapper.writeValueAsString(cardPageResponseDto);
-            redis.set(redisKey,objectAsString);
-            redis.expire(redisKey,60);
+            return objectMapper.writeValueAsString(cardPageResponseDto);
         } catch (JsonProcessingException e) {
             throw new SerializationException("an error occurred during deserialization");
         }
-
-        return cardPageResponseDto;
     }
 
 
@@ -496,23 +681,87 @@ public class CardService {
         String token = authorization.substring(7);
         checkToken(token);
 
-        String key = "pageNumber:"+pageNumber+":limit:"+limit;
-        if (redis.exists(key)){
-            try {
-                return objectMapper.readValue(redis.get(key), CardPageResponseDto.class);
-            } catch (JsonProcessingException e) {
-                throw new SerializationException("an error occurred during serialization");
+        String key = "cards:gen:"+cardsGeneration()+":pageNumber:"+pageNumber+":limit:"+limit;
+        try {
+            String page = nearCache.getOrLoad(key, pageCacheSoftTtl, pageCacheHardTtl,
+                    () -> inReadOnlyTransaction(() -> serializePage(cardRepo.findAll(PageRequest.of(pageNumber,limit)),token)));
+            return objectMapper.readValue(page, CardPageResponseDto.class);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("an error occurred during serialization");
+        } catch (CacheLoadException e) {
+            if (e.getCause() instanceof SerializationException ex) throw ex;
+            throw e;
+        }
+    }
+
+    public CardFeedResponseDto getFeed(Optional<String> after, int limit, boolean withTotal, String authorization) throws TokenNotExistException, SerializationException, InvalidCursorException {
+        String token = authorization.substring(7);
+        checkToken(token);
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_FEED_LIMIT));
+        Long afterId = after.isPresent() ? decodeCursor(after.get()) : null;
+
+        String key = "cards:gen:"+cardsGeneration()+":feed:"+(afterId == null ? "start" : afterId)+":limit:"+pageSize+(withTotal ? ":total" : "");
+        try {
+            String feed = nearCache.getOrLoad(key, pageCacheSoftTtl, pageCacheHardTtl,
+                    () -> inReadOnlyTransaction(() -> serializeFeed(afterId,pageSize,withTotal,token)));
+            return objectMapper.readValue(feed, CardFeedResponseDto.class);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("an error occurred during serialization");
+        } catch (CacheLoadException e) {
+            if (e.getCause() instanceof SerializationException ex) throw ex;
+            throw e;
+        }
+    }
+
+    // Выборка по индексу первичного ключа без OFFSET и count(*), поэтому глубина прокрутки не влияет на скорость
+    private String serializeFeed(Long afterId, int limit, boolean withTotal, String token) throws SerializationException {
+        Limit fetchLimit = Limit.of(limit + 1);
+        List<CardModel> cards = afterId == null
+                ? cardRepo.findAllByOrderByIdDesc(fetchLimit)
+                : cardRepo.findAllByIdLessThanOrderByIdDesc(afterId, fetchLimit);
+
+        boolean last = cards.size() <= limit;
+        if (!last) {
+            cards = cards.subList(0, limit);
+        }
+
+        CardFeedResponseDto cardFeedResponseDto = new CardFeedResponseDto(
+                getFullCardsDto(token,cards),
+                last ? null : encodeCursor(cards.get(cards.size() - 1).getId()),
+                last,
+                withTotal ? cardRepo.count() : null);
+
+        try {
+            return objectMapper.writeValueAsString(cardFeedResponseDto);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("an error occurred during deserialization");
+        }
+    }
+
+    private String encodeCursor(Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CURSOR_PREFIX + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Long decodeCursor(String cursor) throws InvalidCursorException {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(CURSOR_PREFIX)) {
+                throw new InvalidCursorException("Invalid cursor");
             }
-        }else {
-            Page<CardModel> page = cardRepo.findAll(PageRequest.of(pageNumber,limit));
-            return cachingAndCreateDto(page,token,key);
+            return Long.parseLong(decoded.substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor");
         }
+    }
 
+    protected void patchCardTextIntoElastic(CardModel cardModel,CardDto cardDto){
+        brokerProducer.saveInBroker(new ElasticPatchDto(cardModel.getId(),cardDto,null,cardModel.getVersion()));
     }
 
-    @Async
-    protected void patchCardTextIntoElastic(Long id,CardDto cardDto){
-        brokerProducer.saveInBroker(new ElasticPatchDto(id,cardDto));
+    protected void patchCardImagesIntoElastic(CardModel cardModel){
+        brokerProducer.saveInBroker(new ElasticPatchDto(cardModel.getId(),null,List.copyOf(cardModel.getImgIds()),cardModel.getVersion()));
     }
 
     @Transactional
@@ -531,15 +780,16 @@ public class CardService {
             try {
                 CardDto cardDto = cardDtoOptional.get();
                 addCardText(cardDto, cardModel);
-                patchCardTextIntoElastic(id,cardDto);
+                patchCardTextIntoElastic(cardModel,cardDto);
                 cardChange = true;
             } catch (CardNotSavedException e) {
                 throw new CardNotSavedException(e.getMessage());
             }
         }
 
-        if (cardChange && redis.exists(key)){
-            redis.del(key);
+        if (cardChange){
+            evictCard(key);
+            bumpCardsGeneration();
         }
 
         if (optFiles.isPresent()) {
@@ -556,7 +806,10 @@ public class CardService {
                     List<Long> currentImagesId = cardModel.getImgIds();
                     imageIds.parallelStream().forEach(currentImagesId::add);
                     cardModel.setImgIds(currentImagesId);
-                    cardRepo.save(cardModel);
+                    cardRepo.saveAndFlush(cardModel);
+                    patchCardImagesIntoElastic(cardModel);
+                    evictCard(key);
+                    bumpCardsGeneration();
                 }
             }catch (WebClientResponseException.BadRequest e){
                 throw new ImageLimitException("There is a maximum number of images in this ad");
@@ -596,11 +849,11 @@ public class CardService {
 
         String key = "card%d".formatted(cardId);
 
-        if (redis.exists(key)){
-            redis.del(key);
-        }
-        
-        cardRepo.save(card);
+        evictCard(key);
+
+        cardRepo.saveAndFlush(card);
+        patchCardImagesIntoElastic(card);
+        bumpCardsGeneration();
     }
 
     public Boolean checkApiKey(String apiKey){
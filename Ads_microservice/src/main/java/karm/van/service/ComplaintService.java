@@ -2,16 +2,18 @@ package karm.van.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.annotation.PostConstruct;
+import karm.van.cache.NearCache;
 import karm.van.dto.complaint.ComplaintType;
 import karm.van.config.properties.AuthenticationMicroServiceProperties;
 import karm.van.dto.complaint.*;
 import karm.van.dto.user.UserDtoRequest;
+import karm.van.dto.user.UserShortDtoRequest;
 import karm.van.exception.card.CardNotFoundException;
 import karm.van.exception.other.SerializationException;
 import karm.van.exception.other.TokenNotExistException;
 import karm.van.exception.user.NotEnoughPermissionsException;
 import karm.van.exception.user.UsernameNotFoundException;
+import karm.van.jwt.JwtVerifier;
 import karm.van.model.Complaint;
 import karm.van.repo.jpaRepo.CardRepo;
 import karm.van.repo.jpaRepo.ComplaintRepo;
@@ -22,11 +24,11 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import redis.clients.jedis.JedisPooled;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 @Slf4j
@@ -34,29 +36,18 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class ComplaintService {
     private final ComplaintRepo complaintRepo;
     private final ApiService apiService;
+    private final JwtVerifier jwtVerifier;
     private final AuthenticationMicroServiceProperties authProperties;
     private final CardRepo cardRepo;
-    private JedisPooled redis;
+    private final NearCache nearCache;
     private final ObjectMapper objectMapper;
+    private final UserDirectoryService userDirectoryService;
 
-    @Value("${redis.host}")
-    private String redisHost;
     @Value("${microservices.x-api-key}")
     private String apiKey;
 
-    @PostConstruct
-    public void init(){
-        redis = new JedisPooled(redisHost,6379);
-    }
-
     private void checkToken(String token) throws TokenNotExistException {
-        if (!apiService.validateToken(token,
-                apiService.buildUrl(authProperties.getPrefix(),
-                        authProperties.getHost(),
-                        authProperties.getPort(),
-                        authProperties.getEndpoints().getValidateToken()
-                )
-        )){
+        if (!jwtVerifier.isValidAccessToken(token)){
             throw new TokenNotExistException("Invalid token or expired");
         }
     }
@@ -76,21 +67,6 @@ public class ComplaintService {
         return user;
     }
 
-    private UserDtoRequest requestToGetUserById(String token, Long userId) throws UsernameNotFoundException {
-        UserDtoRequest user = apiService.getUserById(apiService.buildUrl(
-                authProperties.getPrefix(),
-                authProperties.getHost(),
-                authProperties.getPort(),
-                authProperties.getEndpoints().getUser()
-        ), token,userId,apiKey);
-
-        if (user == null) {
-            throw new UsernameNotFoundException("User not found");
-        }
-
-        return user;
-    }
-
     @Transactional
     public void createComplaint(String authorizationHeader, ComplaintDtoRequest complaintDto) throws TokenNotExistException, UsernameNotFoundException, CardNotFoundException {
         String token = authorizationHeader.substring(7);
@@ -105,7 +81,7 @@ public class ComplaintService {
 
         Long dtoTargetId = complaintDto.complaintTargetId();
         if (complaintType == ComplaintType.USER){
-            UserDtoRequest user = requestToGetUserById(token,dtoTargetId);
+            UserShortDtoRequest user = userDirectoryService.getUser(dtoTargetId,token);
             complaint.setTargetId(user.id());
         } else if (complaintType == ComplaintType.CARD) {
             if (cardRepo.existsById(dtoTargetId)){
@@ -129,8 +105,9 @@ public class ComplaintService {
 
         String redisKey = "complaints:"+page+":"+limit+":"+complaintType;
 
-        if (redis.exists(redisKey)){
-            return objectMapper.readValue(redis.get(redisKey),ComplaintPageResponseDto.class);
+        Optional<String> cached = nearCache.get(redisKey);
+        if (cached.isPresent()){
+            return objectMapper.readValue(cached.get(),ComplaintPageResponseDto.class);
         }else {
             Page<Complaint> complaints = switch (complaintType.trim().toLowerCase()) {
                 case ("user") -> complaintRepo.findAllByComplaintType(PageRequest.of(page, limit), ComplaintType.USER);
@@ -143,29 +120,40 @@ public class ComplaintService {
     }
 
     private List<AbstractComplaint> getComplaintsForCache(String token, Page<Complaint> complaints){
-        ConcurrentLinkedQueue<AbstractComplaint> complaintList = new ConcurrentLinkedQueue<>();
+        List<Long> usersId = new ArrayList<>();
+
+        complaints.forEach(complaint -> {
+            usersId.add(complaint.getComplaintAuthorId());
+            if (complaint.getComplaintType() == ComplaintType.USER) {
+                usersId.add(complaint.getTargetId());
+            }
+        });
+
+        Map<Long, UserShortDtoRequest> users = userDirectoryService.getUsers(usersId, token);
+        List<AbstractComplaint> complaintList = new ArrayList<>();
 
         complaints.forEach(complaint -> {
             ComplaintType target = complaint.getComplaintType();
-            try {
-                UserDtoRequest complaintAuthor = requestToGetUserById(token, complaint.getComplaintAuthorId());
-
-                if (target == ComplaintType.USER) {
-                    UserDtoRequest badUser = requestToGetUserById(token, complaint.getTargetId());
-                    UserComplaintDtoResponse userComplaintDtoResponse =
-                            new UserComplaintDtoResponse(badUser.name(), complaint.getReason(), complaintAuthor.name(), complaint.getId());
-                    complaintList.add(userComplaintDtoResponse);
-                } else if (target == ComplaintType.CARD) {
-                    CardComplaintDtoResponse cardComplaintDtoResponse =
-                            new CardComplaintDtoResponse(complaint.getTargetId(), complaint.getReason(), complaintAuthor.name(), complaint.getId());
-                    complaintList.add(cardComplaintDtoResponse);
+            UserShortDtoRequest complaintAuthor = users.get(complaint.getComplaintAuthorId());
+
+            if (complaintAuthor == null) {
+                log.error("Author of complaint " + complaint.getId() + " not found");
+                return;
+            }
+
+            if (target == ComplaintType.USER) {
+                UserShortDtoRequest badUser = users.get(complaint.getTargetId());
+                if (badUser == null) {
+                    log.error("Target of complaint " + complaint.getId() + " not found");
+                    return;
                 }
-            } catch (Exception e) {
-                log.error(e.getClass() + " : " + e.getMessage());
+                complaintList.add(new UserComplaintDtoResponse(badUser.name(), complaint.getReason(), complaintAuthor.name(), complaint.getId()));
+            } else if (target == ComplaintType.CARD) {
+                complaintList.add(new CardComplaintDtoResponse(complaint.getTargetId(), complaint.getReason(), complaintAuthor.name(), complaint.getId()));
             }
         });
 
-        return new ArrayList<>(complaintList);
+        return complaintList;
     }
 
     private ComplaintPageResponseDto cacheComplaints(String key, Page<Complaint> page, List<AbstractComplaint> complaints) throws SerializationException {
@@ -185,8 +173,7 @@ public class ComplaintService {
             throw new SerializationException("an error occurred during deserialization");
         }
 
-        redis.set(key,objectAsString);
-        redis.expire(key,60);
+        nearCache.set(key,objectAsString,60);
 
         return complaintPageResponseDto;
     }
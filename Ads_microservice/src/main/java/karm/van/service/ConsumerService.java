@@ -1,80 +1,269 @@
 package karm.van.service;
 
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Script;
+import co.elastic.clients.elasticsearch._types.VersionType;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.json.JsonData;
 import karm.van.dto.card.CardDto;
 import karm.van.dto.card.ElasticPatchDto;
 import karm.van.model.CardDocument;
 import karm.van.model.CardModel;
-import karm.van.repo.elasticRepo.ElasticRepo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.EnableRetry;
-import org.springframework.retry.annotation.Retryable;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
-@EnableRetry
 public class ConsumerService {
-    private final ElasticRepo elasticRepo;
-
-    @Transactional
-    @Retryable(backoff = @Backoff(delay = 10000))
-    @RabbitListener(queues = "${rabbitmq.queue.elastic.save.name}")
-    public void elasticSaveDocumentConsume(CardDocument cardDocument) {
-        try {
-            elasticRepo.save(cardDocument);
-        }catch (Exception e){
-            log.error("Error saving the card in elastic");
-            throw new RuntimeException();
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final CardReindexService cardReindexService;
+    // Тип берётся из заголовка __TypeId__, который выставляет BrokerProducer
+    // Изменение применяется, только если оно новее версии, уже записанной в документе
+    private static final String VERSIONED_PATCH_SCRIPT = """
+            if (ctx._source.version != null && ctx._source.version >= params.version) {
+                ctx.op = 'noop';
+            } else {
+                for (entry in params.fields.entrySet()) {
+                    ctx._source[entry.getKey()] = entry.getValue();
+                }
+                ctx._source.version = params.version;
+            }
+            """;
+    private final Jackson2JsonMessageConverter messageConverter = new Jackson2JsonMessageConverter("karm.van.model", "karm.van.dto.card");
+
+    /**
+     * Pending change of one card within a batch. Operations on the same card are collapsed in
+     * arrival order: create+patch becomes one index, create+delete cancels out, and patches of a
+     * card that is not created in this batch are merged into one partial update.
+     * Versions come from the card row, so Elasticsearch itself rejects events older than the document.
+     */
+    private static class PendingOperation {
+        private CardDocument document;
+        private Map<String, Object> patch;
+        private Long patchVersion;
+        private boolean delete;
+        private Long deleteVersion;
+    }
+
+    @RabbitListener(
+            queues = {"${rabbitmq.queue.elastic.save.name}", "${rabbitmq.queue.elastic.del.name}", "${rabbitmq.queue.elastic.patch.name}"},
+            containerFactory = "elasticBatchListenerContainerFactory")
+    public void elasticSyncConsume(List<Message> messages) throws IOException {
+        Map<Long, PendingOperation> pending = new LinkedHashMap<>();
+
+        for (Message message : messages) {
+            Object payload;
+            try {
+                payload = messageConverter.fromMessage(message);
+            } catch (Exception e) {
+                log.error("Skipping unreadable elastic sync message: " + e.getMessage());
+                continue;
+            }
+
+            if (payload instanceof CardDocument cardDocument) {
+                onSave(pending, cardDocument);
+            } else if (payload instanceof CardModel cardModel) {
+                onDelete(pending, cardModel);
+            } else if (payload instanceof ElasticPatchDto elasticPatchDto) {
+                onPatch(pending, elasticPatchDto);
+            } else {
+                log.error("Unknown elastic sync message: " + payload.getClass());
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            sendBulk(pending);
+        }
+    }
+
+    private void onSave(Map<Long, PendingOperation> pending, CardDocument cardDocument) {
+        PendingOperation previous = pending.get(cardDocument.getId());
+
+        // Очереди сохранения, удаления и изменения не упорядочены между собой, поэтому сравниваются версии
+        if (previous != null) {
+            if (previous.delete) {
+                return;
+            }
+            if (previous.document != null && isOlder(cardDocument.getVersion(), previous.document.getVersion())) {
+                return;
+            }
+            if (previous.patch != null && isNewer(previous.patchVersion, cardDocument.getVersion())) {
+                applyPatch(cardDocument, previous.patch, previous.patchVersion);
+            }
         }
 
+        PendingOperation operation = new PendingOperation();
+        operation.document = cardDocument;
+        pending.put(cardDocument.getId(), operation);
     }
 
-    @Transactional
-    @Retryable(backoff = @Backoff(delay = 10000))
-    @RabbitListener(queues = "${rabbitmq.queue.elastic.del.name}")
-    public void elasticDelDocumentConsume(CardModel cardModel) {
-        try {
-            elasticRepo.findById(cardModel.getId())
-                    .ifPresent(elasticRepo::delete);
-        }catch (Exception e){
-            log.error("Error deleting the card in elastic");
-            throw new RuntimeException();
+    private void onDelete(Map<Long, PendingOperation> pending, CardModel cardModel) {
+        Long id = cardModel.getId();
+        PendingOperation operation = pending.get(id);
+
+        if (operation != null && operation.document != null) {
+            // Карточка создана и удалена в пределах одной пачки, в индекс её писать не нужно
+            pending.remove(id);
+            return;
         }
 
+        operation = new PendingOperation();
+        operation.delete = true;
+        operation.deleteVersion = cardModel.getVersion();
+        pending.put(id, operation);
     }
 
+    private void onPatch(Map<Long, PendingOperation> pending, ElasticPatchDto elasticPatchDto) {
+        Map<String, Object> fields = patchFields(elasticPatchDto);
+        if (fields.isEmpty()) {
+            return;
+        }
+
+        PendingOperation operation = pending.computeIfAbsent(elasticPatchDto.id(), id -> new PendingOperation());
+        if (operation.delete) {
+            return;
+        }
+
+        Long version = elasticPatchDto.version();
 
-    @Transactional
-    @Retryable(backoff = @Backoff(delay = 10000))
-    @RabbitListener(queues = "${rabbitmq.queue.elastic.patch.name}")
-    public void elasticPatchDocumentConsume(ElasticPatchDto elasticPatchDto) {
-        try {
-            CardDto cardDto = elasticPatchDto.cardDto();
-
-            String title = cardDto.title();
-            String text = cardDto.text();
-
-            elasticRepo.findById(elasticPatchDto.id())
-                    .ifPresent(cardDocument -> {
-                        if (!title.trim().isEmpty()){
-                            cardDocument.setTitle(title);
-                        }
-                        if (text.trim().isEmpty()){
-                            cardDocument.setText(text);
-                        }
-
-                        elasticRepo.save(cardDocument);
-                    });
-        }catch (Exception e){
-            log.error("Error patching the card in elastic");
-            throw new RuntimeException();
+        if (operation.document != null) {
+            if (!isOlder(version, operation.document.getVersion())) {
+                applyPatch(operation.document, fields, version);
+            }
+            return;
         }
 
+        if (operation.patch == null) {
+            operation.patch = new HashMap<>(fields);
+            operation.patchVersion = version;
+        } else if (isOlder(version, operation.patchVersion)) {
+            // Более раннее событие не перезаписывает поля из более позднего
+            fields.forEach(operation.patch::putIfAbsent);
+        } else {
+            operation.patch.putAll(fields);
+            operation.patchVersion = version;
+        }
+    }
+
+    private boolean isOlder(Long version, Long currentVersion) {
+        return version != null && currentVersion != null && version < currentVersion;
+    }
+
+    private boolean isNewer(Long version, Long currentVersion) {
+        return version == null || currentVersion == null || version > currentVersion;
     }
 
+    @SuppressWarnings("unchecked")
+    private void applyPatch(CardDocument document, Map<String, Object> fields, Long version) {
+        if (version != null) {
+            document.setVersion(version);
+        }
+        if (fields.containsKey("title")) {
+            document.setTitle((String) fields.get("title"));
+        }
+        if (fields.containsKey("text")) {
+            document.setText((String) fields.get("text"));
+            document.setSnippet((String) fields.get("snippet"));
+        }
+        if (fields.containsKey("imgIds")) {
+            document.setImgIds((List<Long>) fields.get("imgIds"));
+        }
+    }
+
+    private Map<String, Object> patchFields(ElasticPatchDto elasticPatchDto) {
+        Map<String, Object> fields = new HashMap<>();
+        CardDto cardDto = elasticPatchDto.cardDto();
+
+        if (cardDto != null) {
+            if (cardDto.title() != null && !cardDto.title().trim().isEmpty()) {
+                fields.put("title", cardDto.title());
+            }
+            if (cardDto.text() != null && !cardDto.text().trim().isEmpty()) {
+                fields.put("text", cardDto.text());
+                fields.put("snippet", CardDocument.snippetOf(cardDto.text()));
+            }
+        }
+
+        if (elasticPatchDto.imgIds() != null) {
+            fields.put("imgIds", elasticPatchDto.imgIds());
+        }
+
+        return fields;
+    }
+
+    private void sendBulk(Map<Long, PendingOperation> pending) throws IOException {
+        String indexName = elasticsearchOperations.getIndexCoordinatesFor(CardDocument.class).getIndexName();
+        List<BulkOperation> operations = new ArrayList<>(bulkOperations(pending, indexName));
+        // Пока идёт полная переиндексация, изменения дублируются в строящийся индекс
+        cardReindexService.getMirrorIndex()
+                .ifPresent(mirrorIndex -> operations.addAll(bulkOperations(pending, mirrorIndex)));
+
+        BulkResponse response = elasticsearchClient.bulk(BulkRequest.of(bulk -> bulk.operations(operations)));
+        // 404 в строящемся индексе не страшен: перед переключением алиаса эти карточки перечитаются из БД
+        cardReindexService.recordChanges(pending.keySet());
+
+        if (response.errors()) {
+            for (BulkResponseItem item : response.items()) {
+                // 404 - документа уже нет, 409 - в индексе версия новее, чем в событии
+                if (item.error() != null && item.status() != 404 && item.status() != 409) {
+                    log.error("Error syncing card " + item.id() + " with elastic index " + item.index() + ": " + item.error().reason());
+                }
+            }
+        }
+    }
+
+    private List<BulkOperation> bulkOperations(Map<Long, PendingOperation> pending, String indexName) {
+        List<BulkOperation> operations = new ArrayList<>();
+
+        pending.forEach((id, operation) -> {
+            String documentId = id.toString();
+            if (operation.delete) {
+                operations.add(BulkOperation.of(op -> op.delete(delete -> {
+                    delete.index(indexName).id(documentId);
+                    // Удаление не меняет версию строки, поэтому для elastic оно на шаг новее
+                    if (operation.deleteVersion != null) {
+                        delete.versionType(VersionType.External).version(operation.deleteVersion + 1);
+                    }
+                    return delete;
+                })));
+            } else if (operation.document != null) {
+                Map<String, Object> source = elasticsearchOperations.getElasticsearchConverter().mapObject(operation.document);
+                Long version = operation.document.getVersion();
+                operations.add(BulkOperation.of(op -> op.index(index -> {
+                    index.index(indexName).id(documentId).document(source);
+                    if (version != null) {
+                        index.versionType(VersionType.External).version(version);
+                    }
+                    return index;
+                })));
+            } else if (operation.patch != null && operation.patchVersion != null) {
+                Script script = Script.of(s -> s.inline(inline -> inline
+                        .source(VERSIONED_PATCH_SCRIPT)
+                        .params("fields", JsonData.of(operation.patch))
+                        .params("version", JsonData.of(operation.patchVersion))));
+                operations.add(BulkOperation.of(op -> op.update(update -> update.index(indexName).id(documentId).action(action -> action.script(script)))));
+            } else if (operation.patch != null) {
+                operations.add(BulkOperation.of(op -> op.update(update -> update.index(indexName).id(documentId).action(action -> action.doc(operation.patch)))));
+            }
+        });
+
+        return operations;
+    }
 }
@@ -1,106 +1,268 @@
 package karm.van.service;
 
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.Operator;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType;
+import co.elastic.clients.json.JsonData;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.annotation.PostConstruct;
-import karm.van.config.properties.AuthenticationMicroServiceProperties;
+import karm.van.cache.NearCache;
 import karm.van.config.properties.ImageMicroServiceProperties;
 import karm.van.dto.card.CardPageResponseDto;
+import karm.van.dto.card.CardSuggestionDto;
 import karm.van.dto.card.FullCardDtoForOutput;
 import karm.van.dto.image.ImageDto;
-import karm.van.dto.user.UserDtoRequest;
+import karm.van.dto.user.UserShortDtoRequest;
+import karm.van.exception.card.InvalidCursorException;
+import karm.van.exception.card.SearchPageTooDeepException;
 import karm.van.exception.other.SerializationException;
 import karm.van.exception.other.TokenNotExistException;
-import karm.van.exception.user.UsernameNotFoundException;
+import karm.van.jwt.JwtVerifier;
 import karm.van.model.CardDocument;
 import karm.van.model.CardModel;
 import karm.van.repo.elasticRepo.ElasticRepo;
 import karm.van.repo.jpaRepo.CardRepo;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.Query.PointInTime;
 import org.springframework.stereotype.Service;
-import redis.clients.jedis.JedisPooled;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ElasticService {
-    private JedisPooled redis;
+    private final NearCache nearCache;
     private final ObjectMapper objectMapper;
     private final ElasticRepo elasticRepo;
-    private final CardRepo cardRepo;
+    private final ElasticsearchOperations elasticsearchOperations;
     private final ApiService apiService;
+    private final JwtVerifier jwtVerifier;
     private final ImageMicroServiceProperties imageProperties;
-    private final AuthenticationMicroServiceProperties authenticationProperties;
+    private final UserDirectoryService userDirectoryService;
+    private final CardRepo cardRepo;
 
-    @Value("${redis.host}")
-    private String redisHost;
+    private static final int MAX_SUGGEST_SIZE = 10;
+    private static final int MAX_SEARCH_LIMIT = 50;
+    private static final String[] SEARCH_RESULT_FIELDS = {"id", "title", "snippet", "createTime", "userId", "imgIds"};
+
+    /**
+     * Position in the search results handed to the client as an opaque string.
+     * The point in time is opened on the second page, so the first page stays cacheable.
+     */
+    private record SearchCursor(String pitId, List<Object> searchAfter) {
+    }
 
     @Value("${microservices.x-api-key}")
     private String apiKey;
 
-    @PostConstruct
-    public void init(){
-        redis = new JedisPooled(redisHost,6379);
-    }
+    @Value("${card.suggest.cache-ttl:30}")
+    private int suggestCacheTtl;
+
+    @Value("${card.search.max-offset:1000}")
+    private int maxSearchOffset;
+
+    @Value("${card.search.pit-keep-alive:1m}")
+    private Duration pitKeepAlive;
 
     private void checkToken(String token) throws TokenNotExistException {
-        if (!apiService.validateToken(token,
-                apiService.buildUrl(authenticationProperties.getPrefix(),
-                        authenticationProperties.getHost(),
-                        authenticationProperties.getPort(),
-                        authenticationProperties.getEndpoints().getValidateToken()
-                )
-        )){
+        if (!jwtVerifier.isValidAccessToken(token)){
             throw new TokenNotExistException("Invalid token or expired");
         }
     }
 
-    public CardPageResponseDto search(String query, int pageNumber, int limit, String authorization, Optional<LocalDate> createTime) throws SerializationException, TokenNotExistException {
+    public CardPageResponseDto search(String query, int pageNumber, int limit, String authorization, Optional<LocalDate> createTime,
+                                      boolean sortByDate, Optional<String> after)
+            throws SerializationException, TokenNotExistException, InvalidCursorException, SearchPageTooDeepException {
         String token = authorization.substring(7);
         checkToken(token);
 
-        StringBuilder redisKey = new StringBuilder("pageNumber:" + pageNumber + ":limit:" + limit + ":" + query);
+        int pageSize = Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT));
+
+        if (after.isPresent()) {
+            return searchAfter(query, pageSize, token, createTime, sortByDate, decodeCursor(after.get()));
+        }
+
+        // Глубокие страницы через from/size дорогие для кластера, дальше листать только курсором
+        if ((long) pageNumber * pageSize + pageSize > maxSearchOffset) {
+            throw new SearchPageTooDeepException("Page is too deep, use the nextCursor of the previous page");
+        }
+
+        StringBuilder redisKey = new StringBuilder("pageNumber:" + pageNumber + ":limit:" + pageSize + ":" + query);
         createTime.map(timeFilter-> redisKey.append(":").append(timeFilter));
+        if (sortByDate) {
+            redisKey.append(":byDate");
+        }
 
-        if (redis.exists(String.valueOf(redisKey))){
+        Optional<String> cached = nearCache.get(String.valueOf(redisKey));
+        if (cached.isPresent()){
             try {
-                return objectMapper.readValue(redis.get(String.valueOf(redisKey)), CardPageResponseDto.class);
+                return objectMapper.readValue(cached.get(), CardPageResponseDto.class);
             } catch (JsonProcessingException e) {
                 throw new SerializationException("an error occurred during serialization");
             }
         }else {
-            PageRequest pageRequest = PageRequest.of(pageNumber,limit);
+            NativeQuery searchQuery = searchQueryBuilder(query, createTime, sortByDate)
+                    .withPageable(PageRequest.of(pageNumber, pageSize))
+                    .build();
 
-            Page<CardDocument> documents = createTime.map(timeFilter->
-                    elasticRepo.findByQueryAndSortByData(query,timeFilter.toString(),pageRequest))
-                    .orElseGet(()-> elasticRepo.findByQuery(query, pageRequest));
+            SearchHits<CardDocument> hits = elasticsearchOperations.search(searchQuery, CardDocument.class);
 
-            List<Long> ids = documents.stream()
-                    .map(CardDocument::getId)
-                    .toList();
+            return cacheCards(hits, pageNumber, pageSize, token, String.valueOf(redisKey));
+        }
+
+    }
+
+    private CardPageResponseDto searchAfter(String query, int pageSize, String token, Optional<LocalDate> createTime,
+                                            boolean sortByDate, SearchCursor cursor) throws SerializationException {
+        String pitId = cursor.pitId() != null
+                ? cursor.pitId()
+                : elasticsearchOperations.openPointInTime(elasticsearchOperations.getIndexCoordinatesFor(CardDocument.class), pitKeepAlive);
+
+        NativeQuery searchQuery = searchQueryBuilder(query, createTime, sortByDate)
+                .withPointInTime(new PointInTime(pitId, pitKeepAlive))
+                .withSearchAfter(cursor.searchAfter())
+                .withPageable(PageRequest.of(0, pageSize))
+                .build();
+
+        SearchHits<CardDocument> hits = elasticsearchOperations.search(searchQuery, CardDocument.class);
+        String nextPitId = hits.getPointInTimeId() != null ? hits.getPointInTimeId() : pitId;
+
+        CardPageResponseDto page = buildPage(hits, pageSize, false, nextPitId, token);
+        if (page.last()) {
+            elasticsearchOperations.closePointInTime(nextPitId);
+        }
+        return page;
+    }
+
+    // Текстовая часть влияет на релевантность, фильтр по дате идёт в filter и кешируется elastic
+    private NativeQueryBuilder searchQueryBuilder(String query, Optional<LocalDate> createTime, boolean sortByDate) {
+        Query searchQuery = Query.of(q -> q.bool(bool -> {
+            bool.should(should -> should.multiMatch(match -> match
+                            .query(query)
+                            .fields("title^4", "text^3")
+                            .type(TextQueryType.BestFields)
+                            .operator(Operator.Or)))
+                    .should(should -> should.matchPhrase(phrase -> phrase.field("title").query(query).boost(3f)))
+                    .should(should -> should.matchPhrase(phrase -> phrase.field("text").query(query).boost(2f)))
+                    .minimumShouldMatch("1");
+            createTime.ifPresent(timeFilter -> bool.filter(filter -> filter.range(range -> range
+                    .field("createTime")
+                    .gte(JsonData.of(timeFilter.toString())))));
+            return bool;
+        }));
+
+        // id в конце сортировки делает порядок однозначным, на нём держится search_after
+        List<SortOptions> sort = sortByDate
+                ? List.of(SortOptions.of(s -> s.field(field -> field.field("createTime").order(SortOrder.Desc))),
+                          SortOptions.of(s -> s.field(field -> field.field("id").order(SortOrder.Desc))))
+                : List.of(SortOptions.of(s -> s.score(score -> score.order(SortOrder.Desc))),
+                          SortOptions.of(s -> s.field(field -> field.field("id").order(SortOrder.Desc))));
+
+        return NativeQuery.builder()
+                .withQuery(searchQuery)
+                .withSort(sort)
+                .withSourceFilter(new FetchSourceFilter(SEARCH_RESULT_FIELDS, null));
+    }
+
+    private CardPageResponseDto buildPage(SearchHits<CardDocument> hits, int pageSize, boolean first, String pitId, String token) throws SerializationException {
+        List<SearchHit<CardDocument>> searchHits = hits.getSearchHits();
+        List<CardDocument> documents = searchHits.stream().map(SearchHit::getContent).toList();
+
+        boolean last = searchHits.size() < pageSize;
+        String nextCursor = last ? null : encodeCursor(new SearchCursor(pitId, searchHits.get(searchHits.size() - 1).getSortValues()));
+        long totalElements = hits.getTotalHits();
+
+        return new CardPageResponseDto(
+                getFullCardsDto(token, documents),
+                last,
+                (int) ((totalElements + pageSize - 1) / pageSize),
+                totalElements,
+                first,
+                documents.size(),
+                nextCursor);
+    }
+
+    private String encodeCursor(SearchCursor cursor) throws SerializationException {
+        try {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(objectMapper.writeValueAsString(cursor).getBytes(StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("an error occurred during serialization");
+        }
+    }
+
+    private SearchCursor decodeCursor(String cursor) throws InvalidCursorException {
+        SearchCursor searchCursor;
+        try {
+            searchCursor = objectMapper.readValue(Base64.getUrlDecoder().decode(cursor), SearchCursor.class);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new InvalidCursorException("Invalid cursor");
+        }
 
-            List<CardModel> cards = cardRepo.findAllById(ids);
-            return cacheCards(cards,documents,token, String.valueOf(redisKey));
+        if (searchCursor.searchAfter() == null || searchCursor.searchAfter().isEmpty()) {
+            throw new InvalidCursorException("Invalid cursor");
         }
+        return searchCursor;
+    }
+
+    // Подсказки берутся только из индекса: ни БД, ни другие сервисы при наборе текста не вызываются
+    public List<CardSuggestionDto> suggest(String prefix, int size, String authorization) throws SerializationException, TokenNotExistException {
+        String token = authorization.substring(7);
+        checkToken(token);
+
+        String normalizedPrefix = prefix.trim().toLowerCase();
+        if (normalizedPrefix.isEmpty()) {
+            return List.of();
+        }
+        int limit = Math.max(1, Math.min(size, MAX_SUGGEST_SIZE));
+
+        String redisKey = "suggest:" + limit + ":" + normalizedPrefix;
+
+        try {
+            Optional<String> cached = nearCache.get(redisKey);
+            if (cached.isPresent()) {
+                return objectMapper.readValue(cached.get(), new TypeReference<>() {});
+            }
+
+            List<CardSuggestionDto> suggestions = elasticRepo.findSuggestions(normalizedPrefix, PageRequest.of(0, limit)).stream()
+                    .map(document -> new CardSuggestionDto(document.getId(), document.getTitle()))
+                    .toList();
 
+            nearCache.set(redisKey, objectMapper.writeValueAsString(suggestions), suggestCacheTtl);
+            return suggestions;
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("an error occurred during serialization");
+        }
     }
 
-    private CardPageResponseDto cacheCards(List<CardModel> cards,Page<CardDocument> page, String token, String key) throws SerializationException {
+    private CardPageResponseDto cacheCards(SearchHits<CardDocument> hits, int pageNumber, int pageSize, String token, String key) throws SerializationException {
         String objectAsString;
 
-        CardPageResponseDto cardPageResponseDto = new CardPageResponseDto(
-                getFullCardsDto(token,cards),
-                page.isLast(),
-                page.getTotalPages(),
-                page.getTotalElements(),
-                page.isFirst(),
-                page.getNumberOfElements());
+        // Первая страница ещё не открывает point in time, поэтому её можно кешировать
+        CardPageResponseDto cardPageResponseDto = buildPage(hits, pageSize, pageNumber == 0, null, token);
 
         try {
             objectAsString = objectMapper.writeValueAsString(cardPageResponseDto);
@@ -108,52 +270,85 @@ public class ElasticService {
             throw new SerializationException("an error occurred during deserialization");
         }
 
-        redis.set(key,objectAsString);
-        redis.expire(key,60);
+        nearCache.set(key,objectAsString,60);
 
         return cardPageResponseDto;
     }
 
-    private List<FullCardDtoForOutput> getFullCardsDto(String token, List<CardModel> page){
-        return page.stream()
-                .map(card -> {
-                    try {
-                        return new FullCardDtoForOutput(
-                                card.getId(),
-                                card.getTitle(),
-                                card.getText(),
-                                card.getCreateTime(),
-                                requestToGetAllCardImages(card,token),
-                                requestToGetUserById(token,card.getUserId()).name());
-                    } catch (UsernameNotFoundException e) {
-                        throw new RuntimeException(e);
+    // Карточка собирается из документа, в БД идём только за документами старого формата
+    private List<FullCardDtoForOutput> getFullCardsDto(String token, List<CardDocument> documents){
+        List<CardDocument> completeDocuments = completeLegacyDocuments(documents);
+        Map<Long, List<ImageDto>> cardsImages = requestToGetCardsImages(completeDocuments,token);
+
+        // Имя автора в индексе не хранится: после переименования оно устарело бы до полной переиндексации
+        Map<Long, UserShortDtoRequest> authors = userDirectoryService.getUsers(
+                completeDocuments.stream().map(CardDocument::getUserId).toList(), token);
+
+        return completeDocuments.stream()
+                .filter(document -> {
+                    if (!authors.containsKey(document.getUserId())) {
+                        log.warn("Author " + document.getUserId() + " of card " + document.getId() + " was not found, the card is skipped");
+                        return false;
                     }
-                }).toList();
+                    return true;
+                })
+                .map(document -> new FullCardDtoForOutput(
+                        document.getId(),
+                        document.getTitle(),
+                        document.getSnippet(),
+                        document.getCreateTime(),
+                        cardsImages.getOrDefault(document.getId(), List.of()),
+                        authors.get(document.getUserId()).name()))
+                .toList();
     }
 
-    private List<ImageDto> requestToGetAllCardImages(CardModel card, String token){
+    // Документы, проиндексированные до денормализации, не содержат userId, snippet и imgIds, до переиндексации их дополняет БД
+    private List<CardDocument> completeLegacyDocuments(List<CardDocument> documents) {
+        List<Long> legacyCardsId = documents.stream()
+                .filter(ElasticService::isLegacyDocument)
+                .map(CardDocument::getId)
+                .toList();
+        if (legacyCardsId.isEmpty()) {
+            return documents;
+        }
+
+        Map<Long, CardModel> cards = cardRepo.findAllWithImagesByIdIn(legacyCardsId).stream()
+                .collect(Collectors.toMap(CardModel::getId, Function.identity()));
+
+        return documents.stream()
+                .map(document -> {
+                    if (!isLegacyDocument(document)) {
+                        return document;
+                    }
+                    // Карточку уже удалили, а событие удаления ещё не дошло до индекса
+                    CardModel card = cards.get(document.getId());
+                    if (card == null) {
+                        return null;
+                    }
+                    document.setUserId(card.getUserId());
+                    document.setSnippet(CardDocument.snippetOf(card.getText()));
+                    document.setImgIds(List.copyOf(card.getImgIds()));
+                    return document;
+                })
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    private static boolean isLegacyDocument(CardDocument document) {
+        return document.getUserId() == null || document.getSnippet() == null || document.getImgIds() == null;
+    }
+
+    private Map<Long, List<ImageDto>> requestToGetCardsImages(List<CardDocument> documents, String token){
         String url = apiService.buildUrl(
                 imageProperties.getPrefix(),
                 imageProperties.getHost(),
                 imageProperties.getPort(),
-                imageProperties.getEndpoints().getGetImages()
+                imageProperties.getEndpoints().getGetCardsImages()
         );
 
-        return apiService.getCardImagesRequest(card.getImgIds(),url,token,apiKey);
-    }
-
-    private UserDtoRequest requestToGetUserById(String token, Long userId) throws UsernameNotFoundException {
-        UserDtoRequest user = apiService.getUserById(apiService.buildUrl(
-                authenticationProperties.getPrefix(),
-                authenticationProperties.getHost(),
-                authenticationProperties.getPort(),
-                authenticationProperties.getEndpoints().getUser()
-        ), token,userId,apiKey);
-
-        if (user == null) {
-            throw new UsernameNotFoundException("User not found");
-        }
+        Map<Long, List<Long>> cardsImages = documents.stream()
+                .collect(Collectors.toMap(CardDocument::getId, CardDocument::getImgIds));
 
-        return user;
+        return apiService.getCardsImagesRequest(cardsImages,url,token,apiKey);
     }
 }
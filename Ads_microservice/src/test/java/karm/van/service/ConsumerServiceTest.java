@@ -0,0 +1,194 @@
+package karm.van.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Script;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.json.JsonData;
+import karm.van.dto.card.CardDto;
+import karm.van.dto.card.ElasticPatchDto;
+import karm.van.model.CardDocument;
+import karm.van.model.CardModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConsumerServiceTest {
+    private static final String INDEX = "card_index";
+
+    private final Jackson2JsonMessageConverter messageConverter = new Jackson2JsonMessageConverter();
+    private ElasticsearchClient elasticsearchClient;
+    private CardReindexService cardReindexService;
+    private ConsumerService consumerService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        elasticsearchClient = mock(ElasticsearchClient.class);
+        ElasticsearchOperations elasticsearchOperations = mock(ElasticsearchOperations.class);
+        ElasticsearchConverter elasticsearchConverter = mock(ElasticsearchConverter.class);
+        cardReindexService = mock(CardReindexService.class);
+        BulkResponse response = mock(BulkResponse.class);
+
+        when(elasticsearchOperations.getIndexCoordinatesFor(CardDocument.class)).thenReturn(IndexCoordinates.of(INDEX));
+        when(elasticsearchOperations.getElasticsearchConverter()).thenReturn(elasticsearchConverter);
+        // Достаточно полей, которые проверяют тесты
+        when(elasticsearchConverter.mapObject(any())).thenAnswer(invocation -> {
+            CardDocument document = invocation.getArgument(0);
+            Document source = Document.create();
+            source.put("title", document.getTitle());
+            source.put("version", document.getVersion());
+            return source;
+        });
+        when(cardReindexService.getMirrorIndex()).thenReturn(Optional.empty());
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenReturn(response);
+
+        consumerService = new ConsumerService(elasticsearchClient, elasticsearchOperations, cardReindexService);
+    }
+
+    @Test
+    void mergesPatchIntoDocumentSavedInTheSameBatch() throws Exception {
+        consumerService.elasticSyncConsume(List.of(
+                message(document(1L, "old", 1L)),
+                message(patch(1L, "new", 2L))));
+
+        List<BulkOperation> operations = sentOperations();
+        assertThat(operations).hasSize(1);
+        assertThat(operations.get(0).isIndex()).isTrue();
+        assertThat(operations.get(0).index().version()).isEqualTo(2L);
+        assertThat(source(operations.get(0))).containsEntry("title", "new");
+    }
+
+    @Test
+    void keepsNewerPatchWhenOlderSaveArrivesLater() throws Exception {
+        consumerService.elasticSyncConsume(List.of(
+                message(patch(1L, "new", 3L)),
+                message(document(1L, "old", 2L))));
+
+        List<BulkOperation> operations = sentOperations();
+        assertThat(operations).hasSize(1);
+        assertThat(operations.get(0).index().version()).isEqualTo(3L);
+        assertThat(source(operations.get(0))).containsEntry("title", "new");
+    }
+
+    @Test
+    void ignoresSaveOlderThanTheOneAlreadyInTheBatch() throws Exception {
+        consumerService.elasticSyncConsume(List.of(
+                message(document(1L, "newer", 5L)),
+                message(document(1L, "older", 4L))));
+
+        List<BulkOperation> operations = sentOperations();
+        assertThat(operations).hasSize(1);
+        assertThat(operations.get(0).index().version()).isEqualTo(5L);
+        assertThat(source(operations.get(0))).containsEntry("title", "newer");
+    }
+
+    @Test
+    void dropsCardCreatedAndDeletedInTheSameBatch() throws Exception {
+        consumerService.elasticSyncConsume(List.of(
+                message(document(1L, "title", 1L)),
+                message(card(1L, 1L))));
+
+        verify(elasticsearchClient, never()).bulk(any(BulkRequest.class));
+    }
+
+    @Test
+    void deleteWinsOverLaterSaveOfTheSameCard() throws Exception {
+        consumerService.elasticSyncConsume(List.of(
+                message(card(1L, 4L)),
+                message(document(1L, "title", 3L))));
+
+        List<BulkOperation> operations = sentOperations();
+        assertThat(operations).hasSize(1);
+        assertThat(operations.get(0).isDelete()).isTrue();
+        assertThat(operations.get(0).delete().version()).isEqualTo(5L);
+    }
+
+    @Test
+    void mergesPatchesIntoOneVersionedUpdate() throws Exception {
+        consumerService.elasticSyncConsume(List.of(
+                message(patch(1L, "newer", 7L)),
+                message(new ElasticPatchDto(1L, new CardDto("older", "text"), null, 6L))));
+
+        List<BulkOperation> operations = sentOperations();
+        assertThat(operations).hasSize(1);
+        assertThat(operations.get(0).isUpdate()).isTrue();
+        Script script = operations.get(0).update().action().script();
+        Map<String, JsonData> params = script.inline().params();
+        assertThat(params.get("version").to(Long.class)).isEqualTo(7L);
+        Map<?, ?> fields = params.get("fields").to(Map.class);
+        assertThat(fields.get("title")).isEqualTo("newer");
+        assertThat(fields.get("text")).isEqualTo("text");
+    }
+
+    @Test
+    void mirrorsOperationsIntoIndexBeingRebuilt() throws Exception {
+        when(cardReindexService.getMirrorIndex()).thenReturn(Optional.of("card_index_rebuild"));
+
+        consumerService.elasticSyncConsume(List.of(
+                message(document(1L, "title", 1L)),
+                message(card(2L, 1L))));
+
+        List<BulkOperation> operations = sentOperations();
+        assertThat(operations).hasSize(4);
+        assertThat(operations).extracting(ConsumerServiceTest::indexName)
+                .containsExactly(INDEX, INDEX, "card_index_rebuild", "card_index_rebuild");
+        verify(cardReindexService).recordChanges(Set.of(1L, 2L));
+    }
+
+    private List<BulkOperation> sentOperations() throws Exception {
+        ArgumentCaptor<BulkRequest> request = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(elasticsearchClient).bulk(request.capture());
+        return request.getValue().operations();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> source(BulkOperation operation) {
+        return (Map<String, Object>) operation.index().document();
+    }
+
+    private static String indexName(BulkOperation operation) {
+        if (operation.isIndex()) {
+            return operation.index().index();
+        }
+        if (operation.isDelete()) {
+            return operation.delete().index();
+        }
+        return operation.update().index();
+    }
+
+    private Message message(Object payload) {
+        return messageConverter.toMessage(payload, new MessageProperties());
+    }
+
+    private static CardDocument document(Long id, String title, Long version) {
+        return CardDocument.builder().id(id).title(title).text("text").version(version).build();
+    }
+
+    private static ElasticPatchDto patch(Long id, String title, Long version) {
+        return new ElasticPatchDto(id, new CardDto(title, null), null, version);
+    }
+
+    private static CardModel card(Long id, Long version) {
+        return CardModel.builder().id(id).version(version).build();
+    }
+}
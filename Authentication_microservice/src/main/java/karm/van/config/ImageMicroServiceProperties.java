@@ -18,7 +18,6 @@ public class ImageMicroServiceProperties {
     public static class Endpoints{
         private String saveProfileImage;
         private String moveImage;
-        private String delImageFromMinio;
         private String moveProfileImage;
         private String profileImage;
     }
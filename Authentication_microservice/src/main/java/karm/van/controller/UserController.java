@@ -16,6 +16,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
 
 import java.nio.file.AccessDeniedException;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -42,6 +43,18 @@ public class UserController {
         }
     }
 
+    @PostMapping("/get/batch")
+    public ResponseEntity<?> getUsersDto(@RequestBody List<Long> usersId,
+                                         @RequestHeader(name = "x-api-key") String apiKey){
+        try {
+            if(myUserService.checkApiKeyNotEquals(apiKey)){
+                throw new InvalidApiKeyException("Access denied");
+            }
+            return ResponseEntity.ok(myUserService.getUsers(usersId));
+        }catch (InvalidApiKeyException e){
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 
     @GetMapping("/profile/{userName}")
     public ResponseEntity<?> getFullUserData(HttpServletRequest request,
@@ -227,7 +240,7 @@ public class UserController {
             return ResponseEntity.ok("User deleted successfully");
         } catch (BadCredentialsException e){
             return ResponseEntity.badRequest().body(e.getMessage());
-        } catch (CardNotDeletedException | ImageNotMovedException | ImageNotDeletedException | ComplaintsNotDeletedException e){
+        } catch (CardNotDeletedException | ImageNotMovedException | ComplaintsNotDeletedException e){
             log.error("class: "+e.getClass()+" message: "+e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Due to an internal error, your account was not deleted");
         }
@@ -0,0 +1,4 @@
+package karm.van.dto.response;
+
+public record RevocationMessageDto(String userName, long until) {
+}
@@ -0,0 +1,8 @@
+package karm.van.dto.response;
+
+import java.util.List;
+
+public record UserShortDtoResponse(Long id,
+                                   String name,
+                                   List<String> role) {
+}
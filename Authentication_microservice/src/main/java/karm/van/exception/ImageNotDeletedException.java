@@ -1,16 +0,0 @@
-package karm.van.exception;
-
-import org.springframework.http.HttpStatus;
-import org.springframework.web.bind.annotation.ResponseStatus;
-
-@ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
-public class ImageNotDeletedException extends Exception{
-
-    public ImageNotDeletedException(String message){
-        super(message);
-    }
-
-    public ImageNotDeletedException(){
-        super();
-    }
-}
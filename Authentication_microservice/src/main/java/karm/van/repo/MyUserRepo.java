@@ -2,7 +2,11 @@ package karm.van.repo;
 
 import karm.van.model.MyUser;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 
@@ -15,4 +19,7 @@ public interface MyUserRepo extends JpaRepository<MyUser, Long> {
 
     Optional<MyUser> findByEmail(String email);
 
+    @Query("select distinct u from MyUser u left join fetch u.roles where u.id in :ids")
+    List<MyUser> findAllWithRolesByIdIn(@Param("ids") Collection<Long> ids);
+
 }
@@ -3,6 +3,7 @@ package karm.van.service;
 import jakarta.annotation.PostConstruct;
 import karm.van.dto.response.ProfileImageDtoResponse;
 import karm.van.dto.response.UserCardResponse;
+import karm.van.http.InternalHttpClient;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
@@ -20,11 +21,14 @@ import java.util.Optional;
 @Component
 @Slf4j
 public class ApiService {
-    private WebClient webClient;
+    private final InternalHttpClient internalHttpClient;
+    private WebClient imageClient;
+    private WebClient adsClient;
 
     @PostConstruct
     public void init(){
-        webClient = WebClient.create();
+        imageClient = internalHttpClient.forService("image");
+        adsClient = internalHttpClient.forService("ads");
     }
 
     public String buildUrl(String prefix, String host, String port, String endpoint, Long... ids) {
@@ -51,7 +55,7 @@ public class ApiService {
     }
 
 
-    private HttpStatusCode sendPostRequest(String url, String token, String apiKey) {
+    private HttpStatusCode sendPostRequest(WebClient webClient, String url, String token, String apiKey) {
         return Objects.requireNonNull(
                 webClient
                         .post()
@@ -63,7 +67,7 @@ public class ApiService {
                         })
                         .retrieve()
                         .toBodilessEntity()
-                        .block()
+                        .block(internalHttpClient.getDeadline())
         ).getStatusCode();
     }
 
@@ -73,22 +77,18 @@ public class ApiService {
                 .queryParam("toTrash",toTrash)
                 .toUriString();
 
-        return sendMoveRequest(fullUrl,token,apiKey);
+        return sendMoveRequest(imageClient, fullUrl,token,apiKey);
     }
 
-    public HttpStatusCode deleteImageFromMinioRequest(String url, String token, String apiKey) {
-        return sendDeleteRequest(url,token,apiKey);
+    private HttpStatusCode sendDeleteRequest(WebClient webClient, String url, String token, String apiKey) {
+        return sendDeleteRequest(webClient, url, token, apiKey != null ? Optional.of(apiKey) : Optional.empty());
     }
 
-    private HttpStatusCode sendDeleteRequest(String url, String token, String apiKey) {
-        return sendDeleteRequest(url, token, apiKey != null ? Optional.of(apiKey) : Optional.empty());
+    private HttpStatusCode sendDeleteRequest(WebClient webClient, String url, String token) {
+        return sendDeleteRequest(webClient, url, token, Optional.empty());
     }
 
-    private HttpStatusCode sendDeleteRequest(String url, String token) {
-        return sendDeleteRequest(url, token, Optional.empty());
-    }
-
-    private HttpStatusCode sendDeleteRequest(String url, String token, Optional<String> apiKey) {
+    private HttpStatusCode sendDeleteRequest(WebClient webClient, String url, String token, Optional<String> apiKey) {
         return Objects.requireNonNull(
                         webClient
                                 .delete()
@@ -99,11 +99,11 @@ public class ApiService {
                                 })
                                 .retrieve()
                                 .toBodilessEntity()
-                                .block())
+                                .block(internalHttpClient.getDeadline()))
                 .getStatusCode();
     }
 
-    private <T> T sendGetResponse(String uri, String token, ParameterizedTypeReference<T> responseType, String apiKey){
+    private <T> T sendGetResponse(WebClient webClient, String uri, String token, ParameterizedTypeReference<T> responseType, String apiKey){
         try {
             return webClient
                     .get()
@@ -114,14 +114,14 @@ public class ApiService {
                     })
                     .retrieve()
                     .bodyToMono(responseType)
-                    .block();
+                    .block(internalHttpClient.getDeadline());
         }catch (Exception e){
             return null;
         }
 
     }
 
-    private <T> T sendGetResponse(String uri, String token, String apiKey, Class<T> responseType){
+    private <T> T sendGetResponse(WebClient webClient, String uri, String token, String apiKey, Class<T> responseType){
         try {
             return webClient
                     .get()
@@ -135,23 +135,24 @@ public class ApiService {
                         throw new RuntimeException();
                     })
                     .bodyToMono(responseType)
-                    .block();
+                    .block(internalHttpClient.getDeadline());
         }catch (Exception e){
             return null;
         }
     }
 
     public HttpStatusCode requestToDelCard(String url, String token) {
-        return sendDeleteRequest(url,token);
+        return sendDeleteRequest(adsClient, url,token);
     }
 
-    private HttpStatusCode sendMoveRequest(String url,String token,String apiKey){
-        return sendPostRequest(url,token,apiKey);
+    private HttpStatusCode sendMoveRequest(WebClient webClient, String url,String token,String apiKey){
+        return sendPostRequest(webClient, url,token,apiKey);
     }
 
     public List<UserCardResponse> getCardImagesRequest(String uri, String token, String apiKey) {
 
         return sendGetResponse(
+                adsClient,
                 uri,
                 token,
                 new ParameterizedTypeReference<>() {
@@ -161,11 +162,11 @@ public class ApiService {
     }
 
     public ProfileImageDtoResponse requestToGetProfileImage(String uri, String token, String apiKey){
-        return sendGetResponse(uri,token,apiKey, ProfileImageDtoResponse.class);
+        return sendGetResponse(imageClient, uri,token,apiKey, ProfileImageDtoResponse.class);
     }
 
     public HttpStatusCode requestToDeleteAllComplaintByUserId(String uri, String token, String apiKey){
-        return sendDeleteRequest(uri,token,apiKey);
+        return sendDeleteRequest(adsClient, uri,token,apiKey);
     }
 
 }
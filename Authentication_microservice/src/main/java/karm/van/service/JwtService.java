@@ -17,6 +17,8 @@ import java.util.function.Function;
 @RequiredArgsConstructor
 public class JwtService {
 
+    public static final long ACCESS_TOKEN_EXPIRATION = 1000 * 60 * 15; // 15 минут
+
     @Value("${jwt.secret-key}")
     private String secret_key;
 
@@ -26,7 +28,7 @@ public class JwtService {
     public String generateAccessToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("token_type", "access");
-        return createToken(claims, userDetails.getUsername(), 1000 * 60 * 15); // 15 минут
+        return createToken(claims, userDetails.getUsername(), ACCESS_TOKEN_EXPIRATION);
     }
 
     public String generateRecoveryToken(String email, String password) {
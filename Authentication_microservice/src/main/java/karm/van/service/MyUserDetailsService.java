@@ -20,6 +20,7 @@ import java.time.LocalDateTime;
 @RequiredArgsConstructor
 public class MyUserDetailsService implements UserDetailsService {
     private final MyUserRepo myUserRepo;
+    private final RevocationPublisher revocationPublisher;
 
     @Override
     @Transactional
@@ -35,6 +36,7 @@ public class MyUserDetailsService implements UserDetailsService {
             } else if (!user.isEnable() && (user.getUnlockAt().isBefore(localDateTime) || user.getUnlockAt().isEqual(localDateTime))) {
                 user.setEnable(true);
                 myUserRepo.save(user);
+                revocationPublisher.lift(username);
             }
 
             return new MyUserDetails(user);
@@ -3,8 +3,8 @@ package karm.van.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
+import karm.van.cache.NearCache;
 import karm.van.config.AdsMicroServiceProperties;
 import karm.van.config.AuthMicroServiceProperties;
 import karm.van.config.ImageMicroServiceProperties;
@@ -26,13 +26,14 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import redis.clients.jedis.JedisPooled;
 
 import java.nio.file.AccessDeniedException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.regex.Pattern;
 
 @Service
@@ -40,7 +41,7 @@ import java.util.regex.Pattern;
 @Log4j2
 public class MyUserService {
     private final MyUserRepo userRepo;
-    private JedisPooled redis;
+    private final NearCache nearCache;
     private final ObjectMapper objectMapper;
     private final PasswordEncoder passwordEncoder;
     private final AdsMicroServiceProperties adsProperties;
@@ -50,21 +51,14 @@ public class MyUserService {
     private final JwtService jwtService;
     private final NotificationProducer notificationProducer;
     private final PasswordEncoder encoder;
+    private final RevocationPublisher revocationPublisher;
 
     @Value("${microservices.x-api-key}")
     private String apiKey;
 
-    @Value("${redis.host}")
-    private String redisHost;
-
     @Value("${server.port}")
     private String serverPort;
 
-    @PostConstruct
-    public void init(){
-        redis = new JedisPooled(redisHost,6379);
-    }
-
     public UserDtoResponse getUser(Authentication authentication, Optional<Long> userIdOpt) throws UsernameNotFoundException, BadCredentialsException {
 
         // Лямбда-функция для создания UserDtoResponse
@@ -92,6 +86,17 @@ public class MyUserService {
                                 .orElseThrow(() -> new UsernameNotFoundException("User not found with this username")));
     }
 
+    public Map<Long, UserShortDtoResponse> getUsers(List<Long> usersId) {
+        if (usersId.isEmpty()) {
+            return Map.of();
+        }
+
+        return userRepo.findAllWithRolesByIdIn(usersId).stream()
+                .collect(Collectors.toMap(
+                        MyUser::getId,
+                        user -> new UserShortDtoResponse(user.getId(), user.getName(), user.getRoles())));
+    }
+
     private List<UserCardResponse> sendRequestToGetUserCards(String token, Long userId) throws CardsNotGetedException {
         String uri = apiService.buildUrl(
                 adsProperties.getPrefix(),
@@ -134,8 +139,9 @@ public class MyUserService {
 
     public FullUserDtoResponse getFullUserData(HttpServletRequest request, String name) throws CardsNotGetedException, ImageNotGetedException, JsonProcessingException {
         String redisKey = "user_"+name;
-        if (redis.exists(redisKey)){
-            return objectMapper.readValue(redis.get(redisKey), FullUserDtoResponse.class);
+        Optional<String> cached = nearCache.get(redisKey);
+        if (cached.isPresent()){
+            return objectMapper.readValue(cached.get(), FullUserDtoResponse.class);
         }else {
             return cacheUserInfo(request,name,redisKey);
         }
@@ -175,8 +181,7 @@ public class MyUserService {
             );
 
             String objectAsString = objectMapper.writeValueAsString(fullUserDtoResponse);
-            redis.set(redisKey,objectAsString);
-            redis.expire(redisKey,60);
+            nearCache.set(redisKey,objectAsString,60);
             return fullUserDtoResponse;
         } catch (Exception e){
             log.error("class: "+e.getClass()+" message: "+e.getMessage());
@@ -222,6 +227,7 @@ public class MyUserService {
                 .build();
 
         userRepo.save(user);
+        revocationPublisher.lift(name);
 
     }
 
@@ -263,26 +269,6 @@ public class MyUserService {
         }
     }
 
-    private void deleteImageFromMinio(Long imageId,String token) throws ImageNotDeletedException {
-        String url = apiService.buildUrl(
-                imageProperties.getPrefix(),
-                imageProperties.getHost(),
-                imageProperties.getPort(),
-                imageProperties.getEndpoints().getDelImageFromMinio(),
-                imageId
-        );
-
-        try {
-            HttpStatusCode httpStatusCode = apiService.deleteImageFromMinioRequest(url, token, apiKey);
-            if (httpStatusCode != HttpStatus.OK) {
-                throw new ImageNotDeletedException();
-            }
-        }catch (Exception e){
-            log.error("class: "+e.getClass()+" message: "+e.getMessage());
-            throw new ImageNotDeletedException("An error occurred on the server side during the image deleting");
-        }
-    }
-
     @Async
     protected void rollBackImages(Long imageId, String token){
         String imageUrl = apiService.buildUrl(
@@ -332,7 +318,7 @@ public class MyUserService {
     }
 
     @Transactional
-    public void delUser(Authentication authentication, HttpServletRequest request) throws ImageNotMovedException, CardNotDeletedException, ImageNotDeletedException, ComplaintsNotDeletedException {
+    public void delUser(Authentication authentication, HttpServletRequest request) throws ImageNotMovedException, CardNotDeletedException, ComplaintsNotDeletedException {
         String token = (String) request.getAttribute("jwtToken");
         String redisKey = "user_"+authentication.getName();
         MyUser user = userRepo.findByName(authentication.getName())
@@ -346,12 +332,10 @@ public class MyUserService {
             if (!user.getCards().isEmpty()){
                 deleteAllUserCards(user,token);
             }
-            if (userProfileImageId>0){
-                deleteImageFromMinio(userProfileImageId,token);
-            }
             userRepo.delete(user);
-            redis.del(redisKey);
-        }catch (ImageNotMovedException | ImageNotDeletedException e){
+            nearCache.del(redisKey);
+            revocationPublisher.revokeIssuedTokens(user.getName());
+        }catch (ImageNotMovedException e){
             log.error("class: "+e.getClass()+" message: "+e.getMessage());
             throw e;
         }catch (CardNotDeletedException |ComplaintsNotDeletedException e){
@@ -423,6 +407,9 @@ public class MyUserService {
             if (name.trim().isEmpty()) {
                 throw new IllegalArgumentException("Name cannot be blank");
             }
+            if (!name.equals(user.getName())) {
+                revocationPublisher.revokeIssuedTokens(user.getName());
+            }
             user.setName(name);
         });
 
@@ -480,7 +467,7 @@ public class MyUserService {
         });
 
         userRepo.save(user);
-        redis.del(redisKey);
+        nearCache.del(redisKey);
     }
 
     private boolean isValidEmail(String email) {
@@ -508,9 +495,7 @@ public class MyUserService {
             cards.add(cardId);
         }
 
-        if (redis.exists(redisKey)){
-            redis.del(redisKey);
-        }
+        nearCache.del(redisKey);
 
         userRepo.save(user);
 
@@ -527,13 +512,13 @@ public class MyUserService {
                 .orElseThrow(() -> new UsernameNotFoundException("User with this name doesn't exist"));
         String redisKey = "favorite-cards:"+currentUserName;
 
-        if (redis.exists(redisKey)){
-            return objectMapper.readValue(redis.get(redisKey), new TypeReference<>(){});
+        Optional<String> cached = nearCache.get(redisKey);
+        if (cached.isPresent()){
+            return objectMapper.readValue(cached.get(), new TypeReference<>(){});
         }else {
             List<Long> favoriteCardsList = user.getFavoriteCards();
             String objectAsString = objectMapper.writeValueAsString(favoriteCardsList);
-            redis.set(redisKey,objectAsString);
-            redis.expire(redisKey,60);
+            nearCache.set(redisKey,objectAsString,60);
 
             return favoriteCardsList;
         }
@@ -556,6 +541,7 @@ public class MyUserService {
         user.setUnlockAt(LocalDateTime.of(year,month,dayOfMonth,hours,minutes,seconds));
         user.setBlockReason(reason);
         userRepo.save(user);
+        revocationPublisher.revoke(userName, user.getUnlockAt());
     }
 
     @Transactional
@@ -590,6 +576,7 @@ public class MyUserService {
         user.setEnable(true);
         user.setUnlockAt(LocalDateTime.now());
         userRepo.save(user);
+        revocationPublisher.lift(userName);
     }
 
     public void getRecoveryMail(RecoveryRequest request) {
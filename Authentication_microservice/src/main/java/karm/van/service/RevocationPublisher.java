@@ -0,0 +1,101 @@
+package karm.van.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import karm.van.dto.response.RevocationMessageDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import redis.clients.jedis.JedisPooled;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Keeps the revocation set used by the other microservices to verify tokens locally.
+ * The set lives in a Redis hash (user name -> revoked until, epoch millis) and every change
+ * is also published on a channel, so verifiers update their copy without polling.
+ * Entries whose time has passed are removed by a periodic job, otherwise the hash would only grow.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class RevocationPublisher {
+    private final ObjectMapper objectMapper;
+    private final JedisPooled redis;
+
+    @Value("${jwt.revocation.key}")
+    private String revocationKey;
+
+    @Value("${jwt.revocation.channel}")
+    private String revocationChannel;
+
+    // Проверка и удаление в одном скрипте, чтобы не стереть отзыв, записанный заново между чтением и удалением
+    private static final String PRUNE_EXPIRED_SCRIPT = """
+            local entries = redis.call('hgetall', KEYS[1])
+            local removed = 0
+            for i = 1, #entries, 2 do
+                if tonumber(entries[i + 1]) <= tonumber(ARGV[1]) then
+                    redis.call('hdel', KEYS[1], entries[i])
+                    removed = removed + 1
+                end
+            end
+            return removed
+            """;
+
+    public void revoke(String userName, LocalDateTime until) {
+        publish(userName, until.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    // Access токены живут недолго, поэтому достаточно отозвать их на время жизни уже выданных
+    public void revokeIssuedTokens(String userName) {
+        publish(userName, System.currentTimeMillis() + JwtService.ACCESS_TOKEN_EXPIRATION);
+    }
+
+    public void lift(String userName) {
+        publish(userName, 0);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.prune-interval:600000}")
+    public void pruneExpired() {
+        try {
+            Object removed = redis.eval(PRUNE_EXPIRED_SCRIPT, List.of(revocationKey), List.of(String.valueOf(System.currentTimeMillis())));
+            log.debug("Expired revocations removed: " + removed);
+        } catch (Exception e) {
+            log.warn("Expired revocations were not removed: " + e.getMessage());
+        }
+    }
+
+    private void publish(String userName, long until) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(userName, until);
+                }
+            });
+        } else {
+            send(userName, until);
+        }
+    }
+
+    private void send(String userName, long until) {
+        try {
+            if (until > 0) {
+                redis.hset(revocationKey, userName, String.valueOf(until));
+            } else {
+                redis.hdel(revocationKey, userName);
+            }
+            redis.publish(revocationChannel, objectMapper.writeValueAsString(new RevocationMessageDto(userName, until)));
+        } catch (JsonProcessingException e) {
+            log.error("class: "+e.getClass()+" message: "+e.getMessage());
+        } catch (Exception e) {
+            log.error("The revocation of user " + userName + " was not published: " + e.getMessage());
+        }
+    }
+}
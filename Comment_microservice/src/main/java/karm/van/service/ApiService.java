@@ -2,14 +2,18 @@ package karm.van.service;
 
 import jakarta.annotation.PostConstruct;
 import karm.van.dto.UserDtoRequest;
+import karm.van.dto.UserShortDtoRequest;
+import karm.van.http.InternalHttpClient;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -17,11 +21,12 @@ import java.util.Objects;
 @Component
 @Slf4j
 public class ApiService {
-    private WebClient webClient;
+    private final InternalHttpClient internalHttpClient;
+    private WebClient authClient;
 
     @PostConstruct
     public void init(){
-        webClient = WebClient.create();
+        authClient = internalHttpClient.forService("authentication");
     }
 
     public String buildUrl(String prefix, String host, String port, String endpoint, Long... ids) {
@@ -39,7 +44,7 @@ public class ApiService {
 
     private <T> T sendGetResponse(String uri, String token, Class<T> responseType, String apiKey){
         try {
-            return webClient
+            return authClient
                     .get()
                     .uri(uri)
                     .headers(httpHeaders -> {
@@ -53,15 +58,30 @@ public class ApiService {
                         throw new RuntimeException();
                     })
                     .bodyToMono(responseType)
-                    .block();
+                    .block(internalHttpClient.getDeadline());
         }catch (Exception e){
             return null;
         }
     }
 
+    private <T> T sendPostJsonRequest(String url, Object body, String token, String apiKey, ParameterizedTypeReference<T> responseType) {
+        return authClient
+                .post()
+                .uri(url)
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    headers.setBearerAuth(token);
+                    headers.set("x-api-key", apiKey);
+                })
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(responseType)
+                .block(internalHttpClient.getDeadline());
+    }
+
     private HttpStatusCode sendPostRequest(String url, String token, String apiKey) {
         return Objects.requireNonNull(
-                webClient
+                authClient
                         .post()
                         .uri(url)
                         .contentType(MediaType.APPLICATION_JSON)
@@ -71,13 +91,13 @@ public class ApiService {
                         })
                         .retrieve()
                         .toBodilessEntity()
-                        .block()
+                        .block(internalHttpClient.getDeadline())
         ).getStatusCode();
     }
 
     private HttpStatusCode sendDeleteRequest(String url, String token, String apiKey) {
         return Objects.requireNonNull(
-                        webClient
+                        authClient
                                 .delete()
                                 .uri(url)
                                 .headers(headers -> {
@@ -86,15 +106,10 @@ public class ApiService {
                                 })
                                 .retrieve()
                                 .toBodilessEntity()
-                                .block())
+                                .block(internalHttpClient.getDeadline()))
                 .getStatusCode();
     }
 
-    public Boolean validateToken(String token, String url) {
-        Map<?, ?> responseMap = sendGetResponse(url, token, Map.class,null);
-        return responseMap != null && responseMap.containsKey("valid") && (Boolean) responseMap.get("valid");
-    }
-
     private UserDtoRequest fetchUserData(String uri, String token, String apiKey) {
         return sendGetResponse(uri,token, UserDtoRequest.class, apiKey);
     }
@@ -110,6 +125,17 @@ public class ApiService {
         return fetchUserData(uri, token, apiKey);
     }
 
+    public Map<Long, UserShortDtoRequest> getUsersRequest(List<Long> usersId, String url, String token, String apiKey) {
+        return sendPostJsonRequest(
+                url,
+                usersId,
+                token,
+                apiKey,
+                new ParameterizedTypeReference<>() {
+                }
+        );
+    }
+
     public HttpStatusCode addCommentToUser(String url,String token,String apiKey) throws NullPointerException{
         return sendPostRequest(url,token,apiKey);
     }
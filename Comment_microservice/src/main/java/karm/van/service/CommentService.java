@@ -2,12 +2,12 @@ package karm.van.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.annotation.PostConstruct;
 import karm.van.config.AuthenticationMicroServiceProperties;
 import karm.van.dto.CommentAuthorDto;
 import karm.van.dto.CommentDto;
 import karm.van.dto.CommentDtoResponse;
 import karm.van.dto.UserDtoRequest;
+import karm.van.dto.UserShortDtoRequest;
 import karm.van.exception.card.CardNotFoundException;
 import karm.van.exception.comment.CommentNotFoundException;
 import karm.van.exception.comment.CommentNotSavedException;
@@ -17,6 +17,7 @@ import karm.van.exception.other.SerializationException;
 import karm.van.exception.token.TokenNotExistException;
 import karm.van.exception.user.NotEnoughPermissionsException;
 import karm.van.exception.user.UsernameNotFoundException;
+import karm.van.jwt.JwtVerifier;
 import karm.van.model.CardModel;
 import karm.van.model.CommentModel;
 import karm.van.repo.CardRepo;
@@ -33,8 +34,8 @@ import org.springframework.transaction.annotation.Transactional;
 import redis.clients.jedis.JedisPooled;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -45,27 +46,15 @@ public class CommentService {
     private final ObjectMapper objectMapper;
     private final AuthenticationMicroServiceProperties authProperties;
     private final ApiService apiService;
-
-    @Value("${redis.host}")
-    private String redisHost;
+    private final JwtVerifier jwtVerifier;
+    private final UserDirectoryService userDirectoryService;
+    private final JedisPooled redis;
 
     @Value("${microservices.x-api-key}")
     private String apiKey;
-    private JedisPooled redis;
-
-    @PostConstruct
-    public void init(){
-        redis = new JedisPooled(redisHost,6379);
-    }
 
     private void checkToken(String token) throws TokenNotExistException {
-        if (!apiService.validateToken(token,
-                apiService.buildUrl(authProperties.getPrefix(),
-                        authProperties.getHost(),
-                        authProperties.getPort(),
-                        authProperties.getEndpoints().getValidateToken()
-                )
-        )){
+        if (!jwtVerifier.isValidAccessToken(token)){
             throw new TokenNotExistException("Invalid token or expired");
         }
     }
@@ -89,21 +78,6 @@ public class CommentService {
         return user;
     }
 
-    private UserDtoRequest requestToGetUserById(String token, Long userId) throws UsernameNotFoundException {
-        UserDtoRequest user = apiService.getUserById(apiService.buildUrl(
-                authProperties.getPrefix(),
-                authProperties.getHost(),
-                authProperties.getPort(),
-                authProperties.getEndpoints().getUser()
-        ), token,userId,apiKey);
-
-        if (user == null) {
-            throw new UsernameNotFoundException("User not found");
-        }
-
-        return user;
-    }
-
     private void requestToUnlinkCommentFromUser(String token, Long commentId, Long authorId) throws CommentNotUnlinkException {
         HttpStatusCode httpStatusCode = apiService.requestToUnlinkCommentFromUser(apiService.buildUrl(
                 authProperties.getPrefix(),
@@ -178,29 +152,32 @@ public class CommentService {
             return List.of();//Возвращаем пустой список
         }
 
-        List<CommentDtoResponse> listOfComments = new ArrayList<>();
+        Map<Long, UserShortDtoRequest> authors = userDirectoryService.getUsers(
+                comments.stream().map(CommentModel::getUserId).toList(), token);
 
-        comments.stream().parallel()
-                .forEach(comment->{
-                    CommentAuthorDto authorDto;
-                    try{
-                        authorDto = new CommentAuthorDto(requestToGetUserById(token,comment.getUserId()).name());
-                    }catch (UsernameNotFoundException e){
-                        throw new RuntimeException(e.getMessage());
+        List<CommentDtoResponse> listOfComments = comments.stream()
+                .map(comment->{
+                    UserShortDtoRequest author = authors.get(comment.getUserId());
+                    if (author == null){
+                        throw new RuntimeException(new UsernameNotFoundException("User not found"));
                     }
-                    CommentDtoResponse commentDtoResponse = new CommentDtoResponse(
+                    return new CommentDtoResponse(
                             comment.getId(),
                             comment.getText(),
                             comment.getCreatedAt(),
-                            authorDto,
+                            new CommentAuthorDto(author.name()),
                             comment.getReplyComments().size());
-                    try {
-                        redis.rpush(keyForCache, objectMapper.writeValueAsString(commentDtoResponse));
-                        listOfComments.add(commentDtoResponse);
-                    } catch (JsonProcessingException e) {
-                        throw new RuntimeException(new SerializationException("An error occurred during serialization"));
-                    }
-                });
+                }).toList();
+
+        try {
+            String[] cachedComments = new String[listOfComments.size()];
+            for (int i = 0; i < cachedComments.length; i++) {
+                cachedComments[i] = objectMapper.writeValueAsString(listOfComments.get(i));
+            }
+            redis.rpush(keyForCache, cachedComments);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(new SerializationException("An error occurred during serialization"));
+        }
 
         redis.expire(keyForCache, 60); // Устанавливаем время жизни равное минуте
 
@@ -0,0 +1,78 @@
+package karm.van.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import karm.van.config.AuthenticationMicroServiceProperties;
+import karm.van.dto.UserShortDtoRequest;
+import karm.van.exception.user.UsernameNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Resolves user ids into names and roles through the batch endpoint of the authentication
+ * microservice. Results are kept in a bounded local cache, so authors repeated across pages
+ * are resolved without leaving the JVM.
+ */
+@Service
+@RequiredArgsConstructor
+public class UserDirectoryService {
+    private final ApiService apiService;
+    private final AuthenticationMicroServiceProperties authProperties;
+    private Cache<Long, UserShortDtoRequest> users;
+
+    @Value("${microservices.x-api-key}")
+    private String apiKey;
+
+    @Value("${user-directory.cache.max-size}")
+    private long maxSize;
+
+    @Value("${user-directory.cache.ttl}")
+    private Duration ttl;
+
+    @PostConstruct
+    public void init(){
+        users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public Map<Long, UserShortDtoRequest> getUsers(Collection<Long> usersId, String token) {
+        List<Long> ids = usersId.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+
+        return users.getAll(ids, missingIds -> requestToGetUsers(List.copyOf(missingIds), token));
+    }
+
+    public UserShortDtoRequest getUser(Long userId, String token) throws UsernameNotFoundException {
+        UserShortDtoRequest user = getUsers(List.of(userId), token).get(userId);
+
+        if (user == null) {
+            throw new UsernameNotFoundException("User not found");
+        }
+
+        return user;
+    }
+
+    private Map<Long, UserShortDtoRequest> requestToGetUsers(List<Long> usersId, String token) {
+        String url = apiService.buildUrl(
+                authProperties.getPrefix(),
+                authProperties.getHost(),
+                authProperties.getPort(),
+                authProperties.getEndpoints().getUsersBatch()
+        );
+
+        Map<Long, UserShortDtoRequest> result = apiService.getUsersRequest(usersId, url, token, apiKey);
+        return result == null ? Map.of() : result;
+    }
+}
@@ -0,0 +1,126 @@
+package karm.van.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Single place where microservices obtain a {@link WebClient} for calls to each other.
+ * Every downstream service gets its own Reactor Netty connection pool, connect and response
+ * timeouts, keep-alive and compression, and every exchange is recorded by a Micrometer timer
+ * tagged with the target service and the endpoint.
+ */
+@Slf4j
+@Component
+public class InternalHttpClient {
+    public static final String METRIC_NAME = "finder.http.client.requests";
+    private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+
+    private final InternalHttpClientProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, WebClient> clients = new ConcurrentHashMap<>();
+    private final Map<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+
+    public InternalHttpClient(InternalHttpClientProperties properties, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    public WebClient forService(String service) {
+        return clients.computeIfAbsent(service, this::createClient);
+    }
+
+    /**
+     * @return the upper bound a caller should wait for a whole call, used with {@code block(Duration)}
+     */
+    public Duration getDeadline() {
+        return properties.getDeadline();
+    }
+
+    /**
+     * @return the response timeout and the wait bound for calls that upload files
+     */
+    public Duration getUploadTimeout() {
+        return properties.getUploadTimeout();
+    }
+
+    private WebClient createClient(String service) {
+        InternalHttpClientProperties.Downstream downstream =
+                properties.getDownstreams().getOrDefault(service, new InternalHttpClientProperties.Downstream());
+
+        int maxConnections = downstream.getMaxConnections() != null ? downstream.getMaxConnections() : properties.getMaxConnections();
+        Duration responseTimeout = downstream.getResponseTimeout() != null ? downstream.getResponseTimeout() : properties.getResponseTimeout();
+
+        ConnectionProvider provider = ConnectionProvider.builder("internal-" + service)
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(properties.getPendingAcquireTimeout())
+                .maxIdleTime(properties.getMaxIdleTime())
+                .maxLifeTime(properties.getMaxLifeTime())
+                .evictInBackground(properties.getEvictInBackground())
+                .build();
+        providers.put(service, provider);
+
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(responseTimeout)
+                .compress(properties.isCompression());
+
+        if (properties.isHttp2()) {
+            httpClient = httpClient.protocol(HttpProtocol.HTTP11, HttpProtocol.H2C);
+        }
+
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(metrics(service))
+                .build();
+    }
+
+    private ExchangeFilterFunction metrics(String service) {
+        return (request, next) -> Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            String endpoint = ID_SEGMENT.matcher(request.url().getPath()).replaceAll("/{id}");
+            String method = request.method().name();
+
+            return next.exchange(request)
+                    .doOnNext(response -> stop(sample, service, endpoint, method, String.valueOf(response.statusCode().value())))
+                    .doOnError(e -> stop(sample, service, endpoint, method, e.getClass().getSimpleName()))
+                    .doOnCancel(() -> stop(sample, service, endpoint, method, "CANCELLED"));
+        });
+    }
+
+    private void stop(Timer.Sample sample, String service, String endpoint, String method, String status) {
+        sample.stop(Timer.builder(METRIC_NAME)
+                .tags(List.of(
+                        Tag.of("service", service),
+                        Tag.of("endpoint", endpoint),
+                        Tag.of("method", method),
+                        Tag.of("status", status)))
+                .register(meterRegistry));
+    }
+
+    @PreDestroy
+    public void close() {
+        providers.values().forEach(ConnectionProvider::dispose);
+    }
+}
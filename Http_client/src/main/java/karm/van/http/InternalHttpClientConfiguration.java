@@ -0,0 +1,9 @@
+package karm.van.http;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(InternalHttpClientProperties.class)
+public class InternalHttpClientConfiguration {
+}
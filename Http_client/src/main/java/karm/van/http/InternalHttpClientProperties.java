@@ -0,0 +1,37 @@
+package karm.van.http;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "http-client")
+@Getter
+@Setter
+public class InternalHttpClientProperties {
+    private Duration connectTimeout = Duration.ofSeconds(2);
+    private Duration responseTimeout = Duration.ofSeconds(5);
+    // Общий предел ожидания одного вызова, включая чтение тела ответа
+    private Duration deadline = Duration.ofSeconds(10);
+    // Загрузка файлов идёт дольше обычного вызова, для неё свой предел ответа и ожидания
+    private Duration uploadTimeout = Duration.ofMinutes(2);
+    private int maxConnections = 50;
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+    private Duration maxLifeTime = Duration.ofMinutes(5);
+    private Duration evictInBackground = Duration.ofSeconds(30);
+    private boolean compression = true;
+    // HTTP/2 без TLS (h2c) с откатом на HTTP/1.1, включать только если его поддерживает вызываемый сервис
+    private boolean http2 = false;
+    private Map<String, Downstream> downstreams = new HashMap<>();
+
+    @Getter
+    @Setter
+    public static class Downstream {
+        private Integer maxConnections;
+        private Duration responseTimeout;
+    }
+}
@@ -16,7 +16,6 @@ public class AuthenticationMicroServiceProperties {
     @Setter
     @Getter
     public static class Endpoints{
-        private String validateToken;
         private String addProfileImage;
     }
 }
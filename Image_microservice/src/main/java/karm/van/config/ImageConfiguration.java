@@ -1,25 +1,14 @@
 package karm.van.config;
 
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-
-import java.util.concurrent.Executor;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableConfigurationProperties({AuthenticationMicroServiceProperties.class})
 @Configuration
 @EnableAsync
+@EnableScheduling
+// Исполнитель для @Async создаёт Spring Boot: пул из spring.task.execution или виртуальные потоки при spring.threads.virtual.enabled
 public class ImageConfiguration {
-    @Bean
-    public Executor getAsyncExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(4);
-        executor.setMaxPoolSize(10);
-        executor.setQueueCapacity(100);
-        executor.setThreadNamePrefix("Async-");
-        executor.initialize();
-        return executor;
-    }
 }
@@ -0,0 +1,39 @@
+package karm.van.config;
+
+import jakarta.annotation.PostConstruct;
+import karm.van.model.ImageModel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Image ids come from the dedicated pooled sequence {@code image_id_pool_seq}, created by Hibernate with
+ * a step of {@link ImageModel#ID_ALLOCATION_SIZE}. The old identity sequence is left untouched, so Hibernate's
+ * increment check at startup cannot fail. On databases that already hold images the new sequence starts at 1,
+ * so it is moved past the largest existing id before the first insert.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class ImageIdSequenceAligner {
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void align() {
+        // Пока приложение не принимает запросы, Hibernate ещё не брал значения из последовательности
+        List<Long> moved = jdbcTemplate.queryForList("""
+                select setval('image_id_pool_seq', max_id + ?)
+                from (select coalesce(max(id), 0) as max_id from image) ids, image_id_pool_seq
+                where last_value < max_id
+                """, Long.class, ImageModel.ID_ALLOCATION_SIZE);
+
+        if (!moved.isEmpty()) {
+            log.info("Image id sequence moved to " + moved.get(0));
+        }
+    }
+}
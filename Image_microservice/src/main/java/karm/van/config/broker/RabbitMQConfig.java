@@ -0,0 +1,78 @@
+package karm.van.config.broker;
+
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.annotation.EnableRabbit;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.RabbitListenerContainerFactory;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableRabbit
+public class RabbitMQConfig {
+
+    @Value("${rabbitmq.queue.image-variants.name}")
+    private String imageVariantsQueue;
+
+    @Value("${image.variants.workers}")
+    private int imageVariantsWorkers;
+
+    @Value("${rabbitmq.exchange.image-metadata-invalidation.name}")
+    private String imageMetadataInvalidationExchange;
+
+    @Bean
+    public Queue imageVariantsQueue() {
+        return new Queue(imageVariantsQueue);
+    }
+
+    // Каждый экземпляр получает свою временную очередь, поэтому сообщение об изменении доходит до всех
+    @Bean
+    public FanoutExchange imageMetadataInvalidationExchange() {
+        return new FanoutExchange(imageMetadataInvalidationExchange);
+    }
+
+    @Bean
+    public Queue imageMetadataInvalidationQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding imageMetadataInvalidationBinding() {
+        return BindingBuilder.bind(imageMetadataInvalidationQueue()).to(imageMetadataInvalidationExchange());
+    }
+
+    @Bean
+    public Jackson2JsonMessageConverter messageConverter() {
+        return new Jackson2JsonMessageConverter();
+    }
+
+    @Bean
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+        RabbitTemplate rabbitTemplate = new RabbitTemplate();
+        rabbitTemplate.setConnectionFactory(connectionFactory);
+        rabbitTemplate.setMessageConverter(messageConverter());
+        return rabbitTemplate;
+    }
+
+    // Уменьшение картинок нагружает CPU и память, поэтому число обработчиков фиксировано, а каждому выдаётся по одному сообщению
+    @Bean
+    public RabbitListenerContainerFactory<?> imageVariantsListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                                  ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setMessageConverter(messageConverter());
+        factory.setConcurrentConsumers(imageVariantsWorkers);
+        factory.setMaxConcurrentConsumers(imageVariantsWorkers);
+        factory.setPrefetchCount(1);
+        return factory;
+    }
+}
@@ -25,6 +25,11 @@ public class ExceptionHandlerController {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(InvalidImageException.class)
+    public ResponseEntity<String> invalidImageException(InvalidImageException ex){
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(ImageNotFoundException.class)
     public ResponseEntity<String> imageNotFoundException(ImageNotFoundException ex){
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
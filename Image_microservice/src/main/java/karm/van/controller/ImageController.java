@@ -1,18 +1,27 @@
 package karm.van.controller;
 
+import karm.van.dto.ImageContentDto;
 import karm.van.dto.ImageDto;
+import karm.van.dto.UploadIntentDto;
+import karm.van.dto.UploadSlotDto;
 import karm.van.exception.*;
+import karm.van.service.ImageDeliveryService;
 import karm.van.service.ImageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 
 @Log4j2
 @RequiredArgsConstructor
@@ -21,6 +30,7 @@ import java.util.List;
 @RequestMapping("/image")
 public class ImageController {
     private final ImageService imageService;
+    private final ImageDeliveryService imageDeliveryService;
 
     @Value("${minio.bucketNames.image-bucket}")
     private String minioImageBucket;
@@ -28,9 +38,6 @@ public class ImageController {
     @Value("${minio.bucketNames.profile-image-bucket}")
     private String minioProfileImageBucket;
 
-    @Value("${minio.bucketNames.trash-bucket}")
-    private String minioTrashBucket;
-
     @GetMapping("/get")
     public List<ImageDto> getCardImages(@RequestParam List<Long> imagesId,
                                         @RequestHeader("x-api-key") String key,
@@ -41,6 +48,36 @@ public class ImageController {
         return imageService.getImages(imagesId,authorization);
     }
 
+    @PostMapping("/get/batch")
+    public Map<Long, List<ImageDto>> getCardsImages(@RequestBody Map<Long, List<Long>> cardsImages,
+                                                    @RequestHeader("x-api-key") String key,
+                                                    @RequestHeader("Authorization") String authorization) throws TokenNotExistException, InvalidApiKeyException {
+        if(imageService.checkNoneEqualsApiKey(key)){
+            throw new InvalidApiKeyException("Invalid api-key");
+        }
+        return imageService.getCardsImages(cardsImages,authorization);
+    }
+
+    // Range, If-None-Match и If-Modified-Since обрабатывает сам Spring MVC, так как телом ответа является Resource
+    @GetMapping("/view/{imageId}")
+    public ResponseEntity<Resource> viewImage(@PathVariable Long imageId,
+                                              @RequestParam(value = "variant", required = false, defaultValue = "original") String variant,
+                                              @RequestHeader("Authorization") String authorization) throws ImageNotFoundException, InvalidImageException, TokenNotExistException {
+        ImageContentDto content = imageDeliveryService.getImageContent(imageId, variant, authorization);
+
+        // Ответ выдаётся только по токену, поэтому общие кэши не должны отдавать его другим клиентам
+        CacheControl cacheControl = content.immutable()
+                ? CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable()
+                : CacheControl.maxAge(Duration.ofMinutes(1)).cachePrivate();
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(content.contentType()))
+                .eTag(content.eTag())
+                .lastModified(content.lastModified())
+                .cacheControl(cacheControl)
+                .body(new FileSystemResource(content.file()));
+    }
+
     @GetMapping("/get-one/{imageId}")
     public ResponseEntity<?> getImage(@PathVariable Long imageId,
                                       @RequestHeader("Authorization") String authorization,
@@ -73,8 +110,6 @@ public class ImageController {
         } catch (ImageNotFoundException | TokenNotExistException | InvalidApiKeyException e) {
             log.error("Error deleting image: {}", e.getMessage(), e);
             return ResponseEntity.badRequest().body(e.getMessage());
-        } catch (ImageNotDeletedException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
         }
     }
 
@@ -94,6 +129,26 @@ public class ImageController {
         }
     }
 
+    @PostMapping("/upload/intent")
+    public List<UploadSlotDto> createUploadIntent(@RequestBody UploadIntentDto uploadIntentDto,
+                                                  @RequestHeader("Authorization") String authorization,
+                                                  @RequestHeader("x-api-key") String key) throws ImageLimitException, TokenNotExistException, InvalidApiKeyException, InvalidImageException {
+        if(imageService.checkNoneEqualsApiKey(key)){
+            throw new InvalidApiKeyException("Invalid api-key");
+        }
+        return imageService.createUploadIntent(uploadIntentDto,authorization,minioImageBucket);
+    }
+
+    @PostMapping("/upload/complete")
+    public List<Long> completeUpload(@RequestBody List<Long> imagesId,
+                                     @RequestHeader("Authorization") String authorization,
+                                     @RequestHeader("x-api-key") String key) throws ImageNotFoundException, TokenNotExistException, InvalidApiKeyException, InvalidImageException {
+        if(imageService.checkNoneEqualsApiKey(key)){
+            throw new InvalidApiKeyException("Invalid api-key");
+        }
+        return imageService.completeUpload(imagesId,authorization);
+    }
+
     @PostMapping(value = "/addProfileImage", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> addProfileImage(@RequestPart("profileImage") MultipartFile profileImage,
                                     @RequestHeader("Authorization") String authorization) {
@@ -124,9 +179,12 @@ public class ImageController {
                 throw new InvalidApiKeyException("Invalid api-key");
             }
 
-            String bucketToMove = toTrash? minioTrashBucket:minioImageBucket;
-
-            imageService.moveAllImagesBetweenBuckets(ids,authorization,bucketToMove);
+            // Корзина теперь отметка удаления, поэтому ни в какой бакет картинки не переносятся
+            if (toTrash) {
+                imageService.moveImagesToTrash(ids,authorization);
+            } else {
+                imageService.restoreImages(ids,authorization);
+            }
             return ResponseEntity.ok("ok");
         } catch (TokenNotExistException | InvalidApiKeyException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -148,9 +206,11 @@ public class ImageController {
             if(imageService.checkNoneEqualsApiKey(key)){
                 throw new InvalidApiKeyException("Invalid api-key");
             }
-            String bucketToMove = toTrash? minioTrashBucket:minioProfileImageBucket;
-
-            imageService.moveImageBetweenBuckets(imageId,authorization,bucketToMove);
+            if (toTrash) {
+                imageService.moveImagesToTrash(List.of(imageId),authorization);
+            } else {
+                imageService.restoreImages(List.of(imageId),authorization);
+            }
             return ResponseEntity.ok("ok");
         } catch (TokenNotExistException | InvalidApiKeyException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
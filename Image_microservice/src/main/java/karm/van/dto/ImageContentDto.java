@@ -0,0 +1,7 @@
+package karm.van.dto;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+public record ImageContentDto(Path file, String eTag, Instant lastModified, String contentType, boolean immutable) {
+}
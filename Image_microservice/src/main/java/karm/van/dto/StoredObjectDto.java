@@ -0,0 +1,6 @@
+package karm.van.dto;
+
+import java.time.Instant;
+
+public record StoredObjectDto(long size, String eTag, Instant lastModified, String contentType) {
+}
@@ -0,0 +1,4 @@
+package karm.van.dto;
+
+public record UploadFileDto(String fileName, String contentType) {
+}
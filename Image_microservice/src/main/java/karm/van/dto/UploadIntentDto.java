@@ -0,0 +1,6 @@
+package karm.van.dto;
+
+import java.util.List;
+
+public record UploadIntentDto(List<UploadFileDto> files, int currentCardImagesCount) {
+}
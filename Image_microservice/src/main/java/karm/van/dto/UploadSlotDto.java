@@ -0,0 +1,6 @@
+package karm.van.dto;
+
+import java.time.Instant;
+
+public record UploadSlotDto(Long imageId, String uploadUrl, String contentType, Instant expiresAt) {
+}
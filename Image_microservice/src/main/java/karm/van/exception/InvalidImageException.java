@@ -0,0 +1,13 @@
+package karm.van.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST,reason = "The uploaded image is invalid")
+public class InvalidImageException extends Exception{
+
+    public InvalidImageException(String message){
+        super(message);
+    }
+
+}
@@ -0,0 +1,26 @@
+package karm.van.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// Один объект в MinIO на одинаковое содержимое, refCount считает записи Image, которые на него ссылаются
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "image_blob", uniqueConstraints = @UniqueConstraint(columnNames = {"bucket", "digest"}))
+public class ImageBlob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String bucket;
+
+    @Column(nullable = false, length = 64)
+    private String digest;
+
+    private int refCount;
+}
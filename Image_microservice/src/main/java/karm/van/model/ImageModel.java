@@ -4,6 +4,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.LocalDateTime;
+
 @Entity
 @Getter
 @Setter
@@ -13,11 +15,34 @@ import lombok.*;
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @Table(name = "Image")
 public class ImageModel {
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Пул id из последовательности позволяет Hibernate вставлять картинки карточки одним batch insert
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "image_id_generator")
+    @SequenceGenerator(name = "image_id_generator", sequenceName = "image_id_pool_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     private String imageBucket;
 
     private String imageName;
+
+    // SHA-256 содержимого, imageName совпадает с ним. null у картинок с уникальным именем, у них нет общего blob
+    private String contentHash;
+
+    // null у картинок, загруженных через сервис до появления прямой загрузки, они считаются загруженными
+    @Enumerated(EnumType.STRING)
+    private ImageStatus status;
+
+    private String uploaderName;
+
+    private LocalDateTime createdAt;
+
+    // Уменьшенные копии лежат в том же бакете, пока они не готовы, поля пустые
+    private String thumbnailName;
+
+    private String previewName;
+
+    // Удалённая картинка остаётся в MinIO до очистки, пока поле заполнено, её можно восстановить
+    private LocalDateTime deletedAt;
 }
\ No newline at end of file
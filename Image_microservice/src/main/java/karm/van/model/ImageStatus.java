@@ -0,0 +1,6 @@
+package karm.van.model;
+
+public enum ImageStatus {
+    PENDING,
+    UPLOADED
+}
@@ -0,0 +1,7 @@
+package karm.van.model;
+
+public enum ImageVariant {
+    ORIGINAL,
+    PREVIEW,
+    THUMBNAIL
+}
@@ -0,0 +1,21 @@
+package karm.van.repository;
+
+import karm.van.model.ImageBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface ImageBlobRepo extends JpaRepository<ImageBlob,Long> {
+    // Параллельная загрузка того же содержимого ждёт на блокировке строки, пока первая не закоммитит объект
+    @Query(value = "insert into image_blob (bucket, digest, ref_count) values (:bucket, :digest, 1) " +
+            "on conflict (bucket, digest) do update set ref_count = image_blob.ref_count + 1 returning ref_count", nativeQuery = true)
+    Integer acquire(@Param("bucket") String bucket, @Param("digest") String digest);
+
+    @Query(value = "update image_blob set ref_count = ref_count - :count where bucket = :bucket and digest = :digest returning ref_count", nativeQuery = true)
+    Integer release(@Param("bucket") String bucket, @Param("digest") String digest, @Param("count") int count);
+
+    @Modifying
+    @Query("delete from ImageBlob b where b.bucket = :bucket and b.digest = :digest and b.refCount <= 0")
+    int deleteUnreferenced(@Param("bucket") String bucket, @Param("digest") String digest);
+}
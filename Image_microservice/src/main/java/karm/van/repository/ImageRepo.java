@@ -1,7 +1,34 @@
 package karm.van.repository;
 
 import karm.van.model.ImageModel;
+import karm.van.model.ImageStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
 
 public interface ImageRepo extends JpaRepository<ImageModel,Long> {
+    List<ImageModel> findAllByStatusAndCreatedAtBefore(ImageStatus status, LocalDateTime createdAt);
+
+    Optional<ImageModel> findFirstByImageBucketAndImageNameAndThumbnailNameNotNull(String imageBucket, String imageName);
+
+    @Modifying
+    @Query("update ImageModel i set i.deletedAt = :deletedAt where i.id in :ids and i.deletedAt is null")
+    int markDeleted(@Param("ids") List<Long> ids, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Modifying
+    @Query("update ImageModel i set i.deletedAt = null where i.id in :ids and i.deletedAt is not null")
+    int restoreDeleted(@Param("ids") List<Long> ids);
+
+    // Блокировка строк не даёт двум подтверждениям одной загрузки пройти проверку статуса одновременно
+    @Query(value = "select * from image where id in :ids order by id for update", nativeQuery = true)
+    List<ImageModel> lockAllById(@Param("ids") List<Long> ids);
+
+    // SKIP LOCKED позволяет нескольким экземплярам чистить разные пачки, а восстановление ждёт конца очистки пачки
+    @Query(value = "select * from image where deleted_at < :deletedBefore order by id limit :limit for update skip locked", nativeQuery = true)
+    List<ImageModel> lockDeletedBatch(@Param("deletedBefore") LocalDateTime deletedBefore, @Param("limit") int limit);
 }
@@ -1,6 +1,7 @@
 package karm.van.service;
 
 import jakarta.annotation.PostConstruct;
+import karm.van.http.InternalHttpClient;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatusCode;
@@ -8,17 +9,17 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import java.util.Map;
 
 @RequiredArgsConstructor
 @Component
 @Slf4j
 public class ApiService {
-    private WebClient webClient;
+    private final InternalHttpClient internalHttpClient;
+    private WebClient authClient;
 
     @PostConstruct
     public void init(){
-        webClient = WebClient.create();
+        authClient = internalHttpClient.forService("authentication");
     }
 
     public String buildUrl(String prefix, String host, String port, String endpoint, Long... ids) {
@@ -36,7 +37,7 @@ public class ApiService {
 
     private <T> T sendGetResponse(String uri, String token, Class<T> responseType){
         try {
-            return webClient
+            return authClient
                     .get()
                     .uri(uri)
                     .headers(httpHeaders -> httpHeaders.setBearerAuth(token))
@@ -45,7 +46,7 @@ public class ApiService {
                         throw new RuntimeException();
                     })
                     .bodyToMono(responseType)
-                    .block();
+                    .block(internalHttpClient.getDeadline());
         }catch (Exception e){
             return null;
         }
@@ -53,7 +54,7 @@ public class ApiService {
 
     private <T> T sendPatchRequest(String uri, String token, String apikey, Class<T> responseType){
         try {
-            return webClient
+            return authClient
                     .patch()
                     .uri(uri)
                     .headers(headers->{
@@ -65,18 +66,12 @@ public class ApiService {
                         throw new RuntimeException();
                     })
                     .bodyToMono(responseType)
-                    .block();
+                    .block(internalHttpClient.getDeadline());
         }catch (Exception e){
             return null;
         }
     }
 
-    public Boolean validateToken(String token, String url) {
-        Map<?, ?> responseMap = sendGetResponse(url, token, Map.class);
-        return responseMap != null && responseMap.containsKey("valid") && (Boolean) responseMap.get("valid");
-    }
-
-
     public Long requestToLinkImageAndUser(String uri, String token, String apiKey) {
         return sendPatchRequest(uri,token,apiKey, Long.class);
     }
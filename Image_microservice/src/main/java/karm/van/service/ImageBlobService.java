@@ -0,0 +1,68 @@
+package karm.van.service;
+
+import karm.van.exception.ImageNotSavedException;
+import karm.van.model.ImageModel;
+import karm.van.repository.ImageBlobRepo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Stores uploaded images under their SHA-256 digest. Each digest has one object per bucket and an
+ * {@code image_blob} row counting the images that point to it, so a repeated upload only bumps the counter
+ * and the object is removed once the last image referencing it is purged.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageBlobService {
+    private final ImageBlobRepo imageBlobRepo;
+
+    public String digest(MultipartFile file) throws ImageNotSavedException {
+        try (InputStream input = new DigestInputStream(file.getInputStream(), MessageDigest.getInstance("SHA-256"))) {
+            input.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(((DigestInputStream) input).getMessageDigest().digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.error("The image digest was not calculated: " + e.getMessage());
+            throw new ImageNotSavedException("There is a problem with image processing");
+        }
+    }
+
+    // true, если такого содержимого в бакете ещё нет и объект нужно загрузить
+    public boolean acquire(String bucket, String digest) {
+        return Objects.equals(imageBlobRepo.acquire(bucket, digest), 1);
+    }
+
+    /**
+     * Drops the references held by the given images and returns those whose blob is no longer referenced,
+     * their objects can be deleted from MinIO.
+     */
+    public List<ImageModel> release(List<ImageModel> images) {
+        Map<String, List<ImageModel>> imagesByBlob = images.stream()
+                .filter(image -> image.getContentHash() != null)
+                .collect(Collectors.groupingBy(image -> image.getImageBucket() + "/" + image.getContentHash()));
+
+        return imagesByBlob.values().stream()
+                .filter(blobImages -> {
+                    ImageModel image = blobImages.get(0);
+                    Integer refCount = imageBlobRepo.release(image.getImageBucket(), image.getContentHash(), blobImages.size());
+                    return refCount != null && refCount <= 0
+                            && imageBlobRepo.deleteUnreferenced(image.getImageBucket(), image.getContentHash()) > 0;
+                })
+                .flatMap(List::stream)
+                .toList();
+    }
+}
@@ -0,0 +1,62 @@
+package karm.van.service;
+
+import karm.van.dto.ImageContentDto;
+import karm.van.dto.ImageDto;
+import karm.van.exception.ImageNotFoundException;
+import karm.van.exception.InvalidImageException;
+import karm.van.exception.TokenNotExistException;
+import karm.van.jwt.JwtVerifier;
+import karm.van.model.ImageVariant;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+
+@Service
+@RequiredArgsConstructor
+public class ImageDeliveryService {
+    private final ImageMetadataCache imageMetadataCache;
+    private final ImageDiskCache imageDiskCache;
+    private final JwtVerifier jwtVerifier;
+
+    public ImageContentDto getImageContent(Long imageId, String variant, String authorization) throws ImageNotFoundException, InvalidImageException, TokenNotExistException {
+        // id идут подряд, поэтому без токена можно было бы перебрать все картинки, включая аватарки
+        if (!jwtVerifier.isValidAccessToken(authorization.substring(7))) {
+            throw new TokenNotExistException("Invalid token or expired");
+        }
+        ImageVariant imageVariant = parseVariant(variant);
+
+        ImageDto image = imageMetadataCache.getImage(imageId)
+                .orElseThrow(() -> new ImageNotFoundException("Image with this id doesn't exist"));
+
+        String variantName = switch (imageVariant) {
+            case ORIGINAL -> image.imageName();
+            case PREVIEW -> image.previewName();
+            case THUMBNAIL -> image.thumbnailName();
+        };
+
+        // Пока копия не готова, отдаётся оригинал, но без immutable, чтобы клиент потом получил копию
+        String fileName = variantName != null ? variantName : image.imageName();
+        ImageDiskCache.CachedObject cached = imageDiskCache.get(image.imageBucket(), fileName);
+
+        String contentType = cached.metadata().contentType() != null
+                ? cached.metadata().contentType()
+                : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+
+        return new ImageContentDto(
+                cached.file(),
+                cached.metadata().eTag(),
+                cached.metadata().lastModified(),
+                contentType,
+                variantName != null);
+    }
+
+    private ImageVariant parseVariant(String variant) throws InvalidImageException {
+        try {
+            return ImageVariant.valueOf(variant.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidImageException("Unknown image variant: " + variant);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package karm.van.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import karm.van.dto.StoredObjectDto;
+import karm.van.exception.ImageNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps recently served MinIO objects on the local disk. Entries are evicted in LRU order once their total size
+ * exceeds {@code image.delivery.cache-max-size}, concurrent misses for the same object share one download.
+ * The index lives in memory only, so the directory is cleared on start.
+ * Evicted files are removed only after {@code image.delivery.evicted-file-grace}, so a response that got
+ * the path just before the eviction can still open it; an already opened file survives the unlink anyway.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ImageDiskCache {
+    private final MinioService minioService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${image.delivery.cache-dir:${java.io.tmpdir}/finder-image-cache}")
+    private Path cacheDir;
+
+    @Value("${image.delivery.cache-max-size:1GB}")
+    private DataSize maxSize;
+
+    @Value("${image.delivery.evicted-file-grace:1m}")
+    private Duration evictedFileGrace;
+
+    private final LinkedHashMap<String, CachedObject> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<CachedObject>> loading = new ConcurrentHashMap<>();
+    private final Queue<EvictedFile> evictedFiles = new ConcurrentLinkedQueue<>();
+    private long totalSize;
+
+    private Counter hits;
+    private Counter misses;
+
+    public record CachedObject(Path file, StoredObjectDto metadata) {
+    }
+
+    private record EvictedFile(Path file, Instant deleteAfter) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        FileSystemUtils.deleteRecursively(cacheDir);
+        Files.createDirectories(cacheDir);
+
+        hits = meterRegistry.counter("finder.image.disk-cache", "result", "hit");
+        misses = meterRegistry.counter("finder.image.disk-cache", "result", "miss");
+        meterRegistry.gauge("finder.image.disk-cache.size", this, cache -> cache.currentSize());
+    }
+
+    public CachedObject get(String bucketName, String fileName) throws ImageNotFoundException {
+        String key = bucketName + "/" + fileName;
+
+        synchronized (this) {
+            CachedObject cached = entries.get(key);
+            if (cached != null && Files.exists(cached.file())) {
+                hits.increment();
+                return cached;
+            }
+        }
+
+        CompletableFuture<CachedObject> download = new CompletableFuture<>();
+        CompletableFuture<CachedObject> running = loading.putIfAbsent(key, download);
+        if (running != null) {
+            return await(running);
+        }
+
+        misses.increment();
+        try {
+            CachedObject cached = download(bucketName, fileName);
+            put(key, cached);
+            download.complete(cached);
+            return cached;
+        } catch (Exception e) {
+            download.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, download);
+        }
+    }
+
+    private CachedObject download(String bucketName, String fileName) throws ImageNotFoundException {
+        Path file = cacheDir.resolve(UUID.randomUUID().toString());
+        Path part = cacheDir.resolve(file.getFileName() + ".part");
+        try {
+            StoredObjectDto metadata = minioService.downloadObject(bucketName, fileName, part);
+            Files.move(part, file, StandardCopyOption.ATOMIC_MOVE);
+            return new CachedObject(file, metadata);
+        } catch (IOException e) {
+            throw new RuntimeException("The image was not written to the disk cache: " + e.getMessage(), e);
+        } finally {
+            deleteQuietly(part);
+        }
+    }
+
+    private synchronized void put(String key, CachedObject cached) {
+        CachedObject previous = entries.put(key, cached);
+        if (previous != null) {
+            totalSize -= previous.metadata().size();
+            deleteLater(previous.file());
+        }
+        totalSize += cached.metadata().size();
+
+        // Только что загруженный файл самый свежий, поэтому вытесняются другие записи
+        Iterator<Map.Entry<String, CachedObject>> iterator = entries.entrySet().iterator();
+        while (totalSize > maxSize.toBytes() && entries.size() > 1 && iterator.hasNext()) {
+            CachedObject evicted = iterator.next().getValue();
+            iterator.remove();
+            totalSize -= evicted.metadata().size();
+            deleteLater(evicted.file());
+        }
+    }
+
+    /**
+     * Drops cached copies of objects that are deleted or about to be purged from MinIO.
+     */
+    public synchronized void evict(String bucketName, Collection<String> fileNames) {
+        for (String fileName : fileNames) {
+            CachedObject evicted = entries.remove(bucketName + "/" + fileName);
+            if (evicted != null) {
+                totalSize -= evicted.metadata().size();
+                deleteLater(evicted.file());
+            }
+        }
+    }
+
+    private void deleteLater(Path file) {
+        evictedFiles.add(new EvictedFile(file, Instant.now().plus(evictedFileGrace)));
+    }
+
+    @Scheduled(fixedDelay = 10000)
+    public void deleteEvictedFiles() {
+        Instant now = Instant.now();
+        EvictedFile evicted;
+        while ((evicted = evictedFiles.peek()) != null && evicted.deleteAfter().isBefore(now)) {
+            evictedFiles.poll();
+            deleteQuietly(evicted.file());
+        }
+    }
+
+    private synchronized long currentSize() {
+        return totalSize;
+    }
+
+    private CachedObject await(CompletableFuture<CachedObject> running) throws ImageNotFoundException {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ImageNotFoundException notFound) {
+                throw new ImageNotFoundException(notFound.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Cached image " + file + " was not deleted: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package karm.van.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import karm.van.dto.ImageDto;
+import karm.van.dto.ImageMetadataInvalidation;
+import karm.van.model.ImageModel;
+import karm.van.model.ImageStatus;
+import karm.van.repository.ImageRepo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded id to {@link ImageDto} cache in front of the image table. Only finished uploads are cached,
+ * deletes, restores and new variants evict the affected ids. After commit the ids are also sent to a fanout
+ * exchange, so every instance drops them; if the broker is unavailable, {@code image.metadata-cache.ttl}
+ * bounds how long other instances may serve an old entry.
+ * Hit rate is exported as the {@code cache.*} metrics with the tag {@code cache=image.metadata}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageMetadataCache {
+    private final ImageRepo imageRepo;
+    private final MeterRegistry meterRegistry;
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${rabbitmq.exchange.image-metadata-invalidation.name}")
+    private String invalidationExchange;
+    private Cache<Long, ImageDto> images;
+
+    @Value("${image.metadata-cache.max-size:100000}")
+    private long maxSize;
+
+    @Value("${image.metadata-cache.ttl:10m}")
+    private Duration ttl;
+
+    @PostConstruct
+    public void init(){
+        images = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, images, "image.metadata");
+    }
+
+    public Map<Long, ImageDto> getImages(Collection<Long> imagesId) {
+        List<Long> ids = imagesId.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+
+        return images.getAll(ids, this::loadImages);
+    }
+
+    public Optional<ImageDto> getImage(Long imageId) {
+        return Optional.ofNullable(getImages(List.of(imageId)).get(imageId));
+    }
+
+    public void evict(Collection<Long> imagesId) {
+        List<Long> ids = List.copyOf(imagesId);
+        images.invalidateAll(ids);
+
+        // Повторно после коммита: параллельный запрос мог успеть положить в кеш строку до изменения
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    images.invalidateAll(ids);
+                    broadcast(ids);
+                }
+            });
+        } else {
+            broadcast(ids);
+        }
+    }
+
+    private void broadcast(List<Long> ids) {
+        try {
+            rabbitTemplate.convertAndSend(invalidationExchange, "", new ImageMetadataInvalidation(ids));
+        } catch (Exception e) {
+            log.warn("Image metadata invalidation was not published for " + ids + ": " + e.getMessage());
+        }
+    }
+
+    @RabbitListener(queues = "#{imageMetadataInvalidationQueue.name}")
+    public void onInvalidation(ImageMetadataInvalidation invalidation) {
+        images.invalidateAll(invalidation.imagesId());
+    }
+
+    private Map<Long, ImageDto> loadImages(Collection<? extends Long> missingIds) {
+        return imageRepo.findAllById(List.copyOf(missingIds)).stream()
+                .filter(image -> image.getStatus() != ImageStatus.PENDING && image.getDeletedAt() == null)
+                .map(ImageMetadataCache::toDto)
+                .collect(Collectors.toMap(ImageDto::id, Function.identity()));
+    }
+
+    public static ImageDto toDto(ImageModel imageModel){
+        return new ImageDto(imageModel.getId(),imageModel.getImageBucket(),imageModel.getImageName(),
+                imageModel.getThumbnailName(),imageModel.getPreviewName());
+    }
+}
@@ -0,0 +1,82 @@
+package karm.van.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import karm.van.model.ImageModel;
+import karm.van.repository.ImageRepo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes soft-deleted images once their grace period is over. A batch is locked with SKIP LOCKED, its rows are
+ * deleted, shared blobs lose their references, and the objects nobody points to any more are removed together with
+ * their variants by DeleteObjects per bucket. If storage fails, the transaction rolls back and the batch is retried
+ * on the next run.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImagePurger {
+    private final ImageRepo imageRepo;
+    private final ImageService imageService;
+    private final ImageBlobService imageBlobService;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+    private TransactionTemplate transactionTemplate;
+    private Counter purged;
+
+    @Value("${image.purge.grace-period:1h}")
+    private Duration gracePeriod;
+
+    @Value("${image.purge.batch-size:1000}")
+    private int batchSize;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        purged = meterRegistry.counter("finder.image.purged");
+    }
+
+    @Scheduled(fixedDelayString = "${image.purge.interval:60000}")
+    public void purge() {
+        LocalDateTime deletedBefore = LocalDateTime.now().minus(gracePeriod);
+        try {
+            Integer count;
+            do {
+                count = transactionTemplate.execute(status -> purgeNextBatch(deletedBefore));
+            } while (count != null && count == batchSize);
+        } catch (Exception e) {
+            log.error("Failed to purge deleted images: " + e.getMessage());
+        }
+    }
+
+    private int purgeNextBatch(LocalDateTime deletedBefore) {
+        List<ImageModel> batch = imageRepo.lockDeletedBatch(deletedBefore, batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        imageRepo.deleteAllInBatch(batch);
+
+        // Общий объект удаляется только вместе с последней ссылающейся на него картинкой
+        List<ImageModel> unreferenced = new ArrayList<>(imageBlobService.release(batch));
+        batch.stream()
+                .filter(image -> image.getContentHash() == null)
+                .forEach(unreferenced::add);
+        imageService.deleteImagesFromMinio(unreferenced);
+
+        purged.increment(batch.size());
+        return batch.size();
+    }
+}
@@ -3,20 +3,36 @@ package karm.van.service;
 import karm.van.config.AuthenticationMicroServiceProperties;
 import karm.van.dto.ImageDto;
 import karm.van.dto.ImageDtoResponse;
+import karm.van.dto.UploadFileDto;
+import karm.van.dto.UploadIntentDto;
+import karm.van.dto.UploadSlotDto;
 import karm.van.exception.*;
+import karm.van.jwt.JwtVerifier;
 import karm.van.model.ImageModel;
+import karm.van.model.ImageStatus;
 import karm.van.repository.ImageRepo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -26,6 +42,11 @@ public class ImageService {
     private final ImageRepo imageRepo;
     private final AuthenticationMicroServiceProperties authProperties;
     private final ApiService apiService;
+    private final JwtVerifier jwtVerifier;
+    private final ImageVariantService imageVariantService;
+    private final ImageMetadataCache imageMetadataCache;
+    private final ImageBlobService imageBlobService;
+    private final ImageDiskCache imageDiskCache;
 
     @Value("${microservices.x-api-key}")
     private String apiKey;
@@ -34,6 +55,15 @@ public class ImageService {
     @Value("${card.images.count}")
     private int allowedImagesCount;
 
+    @Value("${minio.upload.url-ttl:10m}")
+    private Duration uploadUrlTtl;
+
+    @Value("${minio.upload.pending-ttl:1h}")
+    private Duration pendingUploadTtl;
+
+    @Value("${minio.upload.max-size:6MB}")
+    private DataSize maxUploadSize;
+
     private void saveImage(MultipartFile file, String fileName, String bucketName) throws ImageNotSavedException {
         try {
             minioService.putObject(bucketName,file, fileName);
@@ -43,33 +73,14 @@ public class ImageService {
         }
     }
 
-    private void delImage(String imageBucket, String imageName) throws ImageNotDeletedException {
-        try {
-            minioService.delObject(imageBucket,imageName);
-        }catch (Exception e){
-            log.error("The image was not deleted: "+e.getMessage()+" - "+e.getClass());
-            throw new ImageNotDeletedException(e.getMessage());
-        }
-    }
-
-    @Async
-    protected void delImageAsync(String imageBucket, String imageName) throws ImageNotDeletedException {
-        delImage(imageBucket,imageName);
-    }
-
     private void checkToken(String token) throws TokenNotExistException {
-        if (!apiService.validateToken(token,
-                apiService.buildUrl(authProperties.getPrefix(),
-                        authProperties.getHost(),
-                        authProperties.getPort(),
-                        authProperties.getEndpoints().getValidateToken()
-                )
-        )){
+        if (!jwtVerifier.isValidAccessToken(token)){
             throw new TokenNotExistException("Invalid token or expired");
         }
     }
 
-    @Transactional
+    // Откат обязателен, иначе счётчик blob останется увеличенным без загруженного объекта
+    @Transactional(rollbackFor = ImageNotSavedException.class)
     public List<Long> addCardImages(List<MultipartFile> files, int currentCardImagesCount, String authorization, String bucketName) throws ImageNotSavedException, ImageLimitException, TokenNotExistException {
         checkToken(authorization.substring(7));
         if (currentCardImagesCount<allowedImagesCount){
@@ -77,124 +88,254 @@ public class ImageService {
 
             List<MultipartFile> filesToAdd = files.subList(0,Math.min(freeMemory,files.size()));
 
-            String unique_uuid = UUID.randomUUID().toString();
-
-            List<Long> imagesId = new ArrayList<>();
+            List<ImageModel> imageModels = new ArrayList<>();
+            Map<String, MultipartFile> filesByName = new LinkedHashMap<>();
 
             for (MultipartFile file:filesToAdd){
-                String fileName = unique_uuid+"-"+file.getOriginalFilename();
+                String digest = imageBlobService.digest(file);
+                // Повторно выложенные фотографии уже лежат в MinIO, для них только растёт счётчик ссылок
+                if (imageBlobService.acquire(bucketName, digest)) {
+                    filesByName.put(digest, file);
+                }
 
-                ImageModel imageModel = ImageModel.builder()
-                        .imageName(fileName)
+                imageModels.add(ImageModel.builder()
+                        .imageName(digest)
+                        .contentHash(digest)
                         .imageBucket(bucketName)
-                        .build();
-                try {
-                    imageRepo.save(imageModel);
-                    imagesId.add(imageModel.getId());
-                }catch (Exception e){
-                    throw new ImageNotSavedException("There was a problem while saving the image");
-                }
+                        .build());
             }
 
-            filesToAdd.parallelStream().forEach(file -> {
-                String fileName = unique_uuid+"-"+file.getOriginalFilename();
+            // Id берутся из пула последовательности, поэтому все записи уходят одним batch insert
+            try {
+                imageRepo.saveAllAndFlush(imageModels);
+            }catch (Exception e){
+                throw new ImageNotSavedException("There was a problem while saving the image");
+            }
+            List<Long> imagesId = imageModels.stream().map(ImageModel::getId).toList();
 
-                try {
-                    saveImage(file,fileName,bucketName);
-                }catch (Exception e){
-                    throw new RuntimeException(new ImageNotSavedException("There is a problem with image processing, so the article has not been published"));
-                }
-            });
+            try {
+                minioService.putObjects(bucketName, filesByName);
+            } catch (ImageNotSavedException e) {
+                throw new ImageNotSavedException("There is a problem with image processing, so the article has not been published");
+            }
+            imageVariantService.requestVariants(imagesId);
             return imagesId;
         }else {
             throw new ImageLimitException("You have provided more than" + allowedImagesCount + "images");
         }
     }
 
-    private void deleteImagesFromMinio(List<ImageModel> images){
-        images.parallelStream().forEach(image->{
-            try {
-                delImage(image.getImageBucket(), image.getImageName());
-            } catch (ImageNotDeletedException e) {
-                throw new RuntimeException(new ImageNotDeletedException("An error occurred while deleting the card"));
-            }
-        });
-    }
-
     @Transactional
-    public void moveAllImagesBetweenBuckets(List<Long> imagesId, String authorization, String targetBucket) throws TokenNotExistException{
+    public List<UploadSlotDto> createUploadIntent(UploadIntentDto intent, String authorization, String bucketName) throws TokenNotExistException, ImageLimitException, InvalidImageException {
         String token = authorization.substring(7);
         checkToken(token);
+        String uploaderName = jwtVerifier.extractUsername(token)
+                .orElseThrow(() -> new TokenNotExistException("Invalid token or expired"));
 
-        List<ImageModel> images = imageRepo.findAllById(imagesId);
-        images.parallelStream().forEach(imageModel -> {
-            try {
-                minioService.moveObject(imageModel.getImageBucket(), targetBucket, imageModel.getImageName());
-                imageModel.setImageBucket(targetBucket);
-                imageRepo.save(imageModel);
-            } catch (ImageNotFoundException e) {
-                throw new RuntimeException(e);
+        List<UploadFileDto> files = intent.files() == null ? List.of() : intent.files();
+        int freeMemory = allowedImagesCount - intent.currentCardImagesCount();
+        if (files.isEmpty() || files.size() > freeMemory) {
+            throw new ImageLimitException("You can upload from 1 to " + Math.max(freeMemory, 0) + " images");
+        }
+
+        for (UploadFileDto file : files) {
+            if (file.contentType() == null || !file.contentType().startsWith("image/")) {
+                throw new InvalidImageException("Only images can be uploaded");
             }
-        });
+        }
+
+        String unique_uuid = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+
+        List<ImageModel> imageModels = files.stream()
+                .map(file -> ImageModel.builder()
+                        .imageName(unique_uuid + "-" + sanitizeFileName(file.fileName()))
+                        .imageBucket(bucketName)
+                        .status(ImageStatus.PENDING)
+                        .uploaderName(uploaderName)
+                        .createdAt(now)
+                        .build())
+                .toList();
+        imageRepo.saveAll(imageModels);
+
+        List<UploadSlotDto> slots = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            ImageModel imageModel = imageModels.get(i);
+            String contentType = files.get(i).contentType();
+
+            PresignedPutObjectRequest presigned = minioService.presignPutObject(bucketName, imageModel.getImageName(), contentType, uploadUrlTtl);
+            slots.add(new UploadSlotDto(imageModel.getId(), presigned.url().toString(), contentType, presigned.expiration()));
+        }
+        return slots;
     }
 
     @Transactional
-    public void moveImageBetweenBuckets(Long imagesId, String authorization, String targetBucket) throws TokenNotExistException, ImageNotFoundException {
+    public List<Long> completeUpload(List<Long> imagesId, String authorization) throws TokenNotExistException, ImageNotFoundException, InvalidImageException {
         String token = authorization.substring(7);
         checkToken(token);
+        String uploaderName = jwtVerifier.extractUsername(token)
+                .orElseThrow(() -> new TokenNotExistException("Invalid token or expired"));
+
+        List<Long> distinctIds = imagesId.stream().distinct().toList();
+        List<ImageModel> images = imageRepo.lockAllById(distinctIds);
 
-        ImageModel image = imageRepo.findById(imagesId)
-                .orElseThrow(() -> new ImageNotFoundException("Image with this id doesn't exist"));
+        // Чужие слоты и удалённые картинки не отличаются от несуществующих, чтобы нельзя было привязать к карточке чужую картинку
+        boolean allAvailable = images.stream()
+                .allMatch(image -> uploaderName.equals(image.getUploaderName()) && image.getDeletedAt() == null);
+        if (images.size() != distinctIds.size() || !allAvailable) {
+            throw new ImageNotFoundException("Image with this id doesn't exist");
+        }
+
+        // Уже подтверждённая картинка принадлежит другой карточке, повторная привязка сделала бы её общей
+        for (ImageModel image : images) {
+            if (image.getStatus() != ImageStatus.PENDING) {
+                throw new InvalidImageException("Image " + image.getId() + " has already been attached to a card");
+            }
+        }
+
+        for (ImageModel image : images) {
+            OptionalLong size = minioService.getObjectSize(image.getImageBucket(), image.getImageName());
+            if (size.isEmpty()) {
+                throw new InvalidImageException("Image " + image.getId() + " has not been uploaded");
+            }
+            if (size.getAsLong() > maxUploadSize.toBytes()) {
+                // Слот остаётся в PENDING, объект удалит очистка брошенных загрузок
+                throw new InvalidImageException("Image " + image.getId() + " is larger than " + maxUploadSize.toMegabytes() + "MB");
+            }
+        }
+
+        // Статус меняется только после проверки всех картинок: проверяемое исключение не откатывает транзакцию
+        images.forEach(image -> image.setStatus(ImageStatus.UPLOADED));
+        imageRepo.saveAll(images);
+        imageVariantService.requestVariants(distinctIds);
+
+        return distinctIds;
+    }
+
+    @Scheduled(fixedDelayString = "${minio.upload.cleanup-interval:600000}")
+    @Transactional
+    public void deleteAbandonedUploads() {
+        List<ImageModel> abandoned = imageRepo.findAllByStatusAndCreatedAtBefore(
+                ImageStatus.PENDING, LocalDateTime.now().minus(pendingUploadTtl));
+        if (abandoned.isEmpty()) {
+            return;
+        }
 
         try {
-            minioService.moveObject(image.getImageBucket(), targetBucket, image.getImageName());
-            image.setImageBucket(targetBucket);
-            imageRepo.save(image);
-        } catch (ImageNotFoundException e) {
-            throw new RuntimeException(e);
+            deleteImagesFromMinio(abandoned);
+        } catch (RuntimeException e) {
+            log.warn("Abandoned uploads were not deleted from minio: " + e.getMessage());
         }
+        imageRepo.deleteAll(abandoned);
+        log.info("Deleted " + abandoned.size() + " abandoned uploads");
     }
 
+    private String sanitizeFileName(String fileName) {
+        if (fileName == null || fileName.isBlank()) {
+            return "image";
+        }
+        return fileName.replaceAll("[^\\p{L}\\p{N}._-]", "_");
+    }
 
-    @Transactional
-    public void deleteAllImages(List<Long> imagesId,String authorization) throws TokenNotExistException {
-        checkToken(authorization.substring(7));
-        List<ImageModel> images = imageRepo.findAllById(imagesId);
-        images.parallelStream().forEach(imageModel -> {
+    // Вместе с оригиналом переносятся и удаляются его уменьшенные копии
+    private List<String> objectNames(ImageModel image){
+        return Stream.of(image.getImageName(), image.getThumbnailName(), image.getPreviewName())
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // Картинки с общим blob имеют одни и те же имена, поэтому они схлопываются
+    private Map<String, List<String>> groupNamesByBucket(List<ImageModel> images){
+        return images.stream()
+                .collect(Collectors.groupingBy(ImageModel::getImageBucket,
+                        Collectors.flatMapping(image -> objectNames(image).stream(),
+                                Collectors.collectingAndThen(Collectors.toCollection(LinkedHashSet::new), List::copyOf))));
+    }
+
+    // Один запрос DeleteObjects на бакет вместо удаления картинок по одной
+    void deleteImagesFromMinio(List<ImageModel> images){
+        groupNamesByBucket(images).forEach((bucket, names) -> {
+            imageDiskCache.evict(bucket, names);
             try {
-                minioService.delObject(imageModel.getImageBucket(),imageModel.getImageName());
+                minioService.delObjects(bucket, names);
             } catch (ImageNotDeletedException e) {
-                throw new RuntimeException(e);
+                throw new RuntimeException(new ImageNotDeletedException("An error occurred while deleting the card"));
             }
         });
-        deleteImagesFromMinio(images);
-        imageRepo.deleteAllById(imagesId);
+    }
+
+    // Удаление только помечает записи, объекты из MinIO пачками убирает ImagePurger после grace-периода
+    private void markImagesDeleted(List<Long> imagesId){
+        if (imagesId.isEmpty()) {
+            return;
+        }
+        imageRepo.markDeleted(imagesId, LocalDateTime.now());
+        imageMetadataCache.evict(imagesId);
+        groupNamesByBucket(imageRepo.findAllById(imagesId)).forEach(imageDiskCache::evict);
     }
 
     @Transactional
-    public void deleteImage(Long imageId, String authorization) throws ImageNotFoundException, ImageNotDeletedException, TokenNotExistException {
-        String token = authorization.substring(7);
-        checkToken(token);
-        ImageModel imageModel = imageRepo.findById(imageId)
-                .orElseThrow(() -> new ImageNotFoundException("Image with this id doesn't exist"));
+    public void moveImagesToTrash(List<Long> imagesId, String authorization) throws TokenNotExistException {
+        checkToken(authorization.substring(7));
+        markImagesDeleted(imagesId.stream().distinct().toList());
+    }
 
-        try {
-            minioService.delObject(imageModel.getImageBucket(), imageModel.getImageName());
-            imageRepo.delete(imageModel);
-        } catch (Exception e){
-            log.error("class: "+e.getClass()+" message: "+e.getMessage());
-            throw new ImageNotDeletedException("Failed to delete image");
+    @Transactional
+    public void restoreImages(List<Long> imagesId, String authorization) throws TokenNotExistException, ImageNotFoundException {
+        checkToken(authorization.substring(7));
+        List<Long> distinctIds = imagesId.stream().distinct().toList();
+
+        // Восстановить можно только то, что ещё не удалила очистка
+        if (imageRepo.findAllById(distinctIds).size() != distinctIds.size()) {
+            throw new ImageNotFoundException("Image with this id doesn't exist");
         }
+        imageRepo.restoreDeleted(distinctIds);
+        imageMetadataCache.evict(distinctIds);
+    }
+
+    @Transactional
+    public void deleteAllImages(List<Long> imagesId,String authorization) throws TokenNotExistException {
+        checkToken(authorization.substring(7));
+        markImagesDeleted(imagesId.stream().distinct().toList());
     }
 
-    private ImageDto imageModelToDto(ImageModel imageModel){
-        return new ImageDto(imageModel.getId(),imageModel.getImageBucket(),imageModel.getImageName());
+    @Transactional
+    public void deleteImage(Long imageId, String authorization) throws ImageNotFoundException, TokenNotExistException {
+        String token = authorization.substring(7);
+        checkToken(token);
+        if (!imageRepo.existsById(imageId)) {
+            throw new ImageNotFoundException("Image with this id doesn't exist");
+        }
+        markImagesDeleted(List.of(imageId));
     }
 
     public List<ImageDto> getImages(List<Long> imagesId,String authorization) throws TokenNotExistException {
         checkToken(authorization.substring(7));
-        return imageRepo.findAllById(imagesId)
-                .stream().map(this::imageModelToDto).toList();
+        Map<Long, ImageDto> images = imageMetadataCache.getImages(imagesId);
+        return imagesId.stream()
+                .distinct()
+                .map(images::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    public Map<Long, List<ImageDto>> getCardsImages(Map<Long, List<Long>> cardsImages, String authorization) throws TokenNotExistException {
+        checkToken(authorization.substring(7));
+
+        List<Long> imagesId = cardsImages.values().stream()
+                .flatMap(List::stream)
+                .distinct()
+                .toList();
+
+        Map<Long, ImageDto> images = imageMetadataCache.getImages(imagesId);
+
+        return cardsImages.entrySet().stream()
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        entry -> entry.getValue().stream()
+                                .map(images::get)
+                                .filter(Objects::nonNull)
+                                .toList()));
     }
 
     public boolean checkNoneEqualsApiKey(String key) {
@@ -223,31 +364,36 @@ public class ImageService {
         }
     }
 
-    @Transactional
-    public void addProfileImage(MultipartFile profileImage, String authorization, String minioProfileImageBucket) throws TokenNotExistException, ImageNotSavedException, ImageNotDeletedException {
+    @Transactional(rollbackFor = ImageNotSavedException.class)
+    public void addProfileImage(MultipartFile profileImage, String authorization, String minioProfileImageBucket) throws TokenNotExistException, ImageNotSavedException {
         String token = authorization.substring(7);
         checkToken(token);
-        String fileName = UUID.randomUUID()+"-"+profileImage.getOriginalFilename();
+        String digest = imageBlobService.digest(profileImage);
 
         ImageModel imageModel = ImageModel.builder()
-                .imageName(fileName)
+                .imageName(digest)
+                .contentHash(digest)
                 .imageBucket(minioProfileImageBucket)
                 .build();
 
         imageRepo.save(imageModel);
 
+        boolean uploaded = imageBlobService.acquire(minioProfileImageBucket, digest);
+        if (uploaded) {
+            saveImage(profileImage,digest,minioProfileImageBucket);
+        }
+
         try {
-            saveImage(profileImage,fileName,minioProfileImageBucket);
             Long oldImageId = sendRequestToLinkImageAndUser(token,imageModel.getId());
             if (oldImageId>0){
-                ImageModel oldProfileImage = imageRepo.getReferenceById(oldImageId);
-                delImageAsync(oldProfileImage.getImageBucket(),oldProfileImage.getImageName());
+                markImagesDeleted(List.of(oldImageId));
             }
-        } catch (ImageNotSavedException e) {
-            throw new ImageNotSavedException("There is a problem with image processing");
         } catch (ImageNotLinkException e){
             log.error("class: "+e.getClass()+" message: "+e.getMessage());
-            delImageAsync(minioProfileImageBucket,fileName);
+            // Запись blob откатится вместе с транзакцией, поэтому только что загруженный объект больше никому не нужен
+            if (uploaded) {
+                deleteImagesFromMinio(List.of(imageModel));
+            }
             throw new ImageNotSavedException("There is a problem with image processing");
         }
     }
@@ -255,8 +401,8 @@ public class ImageService {
     public ImageDtoResponse getImage(Long imageId, String authorization) throws TokenNotExistException, ImageNotFoundException {
         checkToken(authorization.substring(7));
 
-        return imageRepo.findById(imageId)
-                .map(image->new ImageDtoResponse(image.getImageName(),image.getImageBucket()))
+        return imageMetadataCache.getImage(imageId)
+                .map(image->new ImageDtoResponse(image.imageName(),image.imageBucket()))
                 .orElseThrow(()->new ImageNotFoundException(("Image with this id doesn't exist")));
 
     }
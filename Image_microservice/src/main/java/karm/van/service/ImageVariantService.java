@@ -0,0 +1,186 @@
+package karm.van.service;
+
+import karm.van.dto.ImageVariantsTask;
+import karm.van.model.ImageModel;
+import karm.van.model.ImageStatus;
+import karm.van.repository.ImageRepo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Builds reduced copies of card images after they are stored. The upload only enqueues the image id,
+ * a fixed number of listeners then read the original from MinIO, write a thumbnail and a preview next to it
+ * and record their names, so card lists can point clients at small files.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageVariantService {
+    private static final String VARIANT_CONTENT_TYPE = "image/jpeg";
+
+    private final MinioService minioService;
+    private final ImageRepo imageRepo;
+    private final RabbitTemplate rabbitTemplate;
+    private final ImageMetadataCache imageMetadataCache;
+
+    @Value("${rabbitmq.queue.image-variants.name}")
+    private String imageVariantsQueue;
+
+    @Value("${image.variants.thumbnail-width:200}")
+    private int thumbnailWidth;
+
+    @Value("${image.variants.preview-width:800}")
+    private int previewWidth;
+
+    @Value("${image.variants.quality:0.8}")
+    private float quality;
+
+    public void requestVariants(List<Long> imagesId) {
+        if (imagesId.isEmpty()) {
+            return;
+        }
+
+        // Задачи уходят только после коммита, иначе обработчик может не найти ещё не сохранённые записи
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    sendTasks(imagesId);
+                }
+            });
+        } else {
+            sendTasks(imagesId);
+        }
+    }
+
+    private void sendTasks(List<Long> imagesId) {
+        try {
+            imagesId.forEach(imageId -> rabbitTemplate.convertAndSend(imageVariantsQueue, new ImageVariantsTask(imageId)));
+        } catch (Exception e) {
+            log.error("Image variants were not requested for " + imagesId + ": " + e.getMessage());
+        }
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.image-variants.name}", containerFactory = "imageVariantsListenerContainerFactory")
+    public void generateVariants(ImageVariantsTask task) {
+        try {
+            ImageModel image = imageRepo.findById(task.imageId()).orElse(null);
+            if (image == null || image.getStatus() == ImageStatus.PENDING || image.getDeletedAt() != null || image.getThumbnailName() != null) {
+                return;
+            }
+
+            // Копии общего blob уже могли быть построены для другой картинки с тем же содержимым
+            if (image.getContentHash() != null) {
+                ImageModel sameContent = imageRepo.findFirstByImageBucketAndImageNameAndThumbnailNameNotNull(
+                        image.getImageBucket(), image.getImageName()).orElse(null);
+                if (sameContent != null) {
+                    image.setPreviewName(sameContent.getPreviewName());
+                    image.setThumbnailName(sameContent.getThumbnailName());
+                    imageRepo.save(image);
+                    imageMetadataCache.evict(List.of(image.getId()));
+                    return;
+                }
+            }
+
+            byte[] original = minioService.getObjectBytes(image.getImageBucket(), image.getImageName());
+            BufferedImage source = readScaledDown(original, previewWidth);
+            if (source == null) {
+                log.warn("Image " + image.getId() + " could not be decoded, variants are not created");
+                return;
+            }
+
+            String previewName = image.getImageName() + "-w" + previewWidth + ".jpg";
+            String thumbnailName = image.getImageName() + "-w" + thumbnailWidth + ".jpg";
+
+            BufferedImage preview = resize(source, previewWidth);
+            minioService.putObject(image.getImageBucket(), previewName, encodeJpeg(preview), VARIANT_CONTENT_TYPE);
+            minioService.putObject(image.getImageBucket(), thumbnailName, encodeJpeg(resize(preview, thumbnailWidth)), VARIANT_CONTENT_TYPE);
+
+            image.setPreviewName(previewName);
+            image.setThumbnailName(thumbnailName);
+            imageRepo.save(image);
+            imageMetadataCache.evict(List.of(image.getId()));
+        } catch (Exception e) {
+            // Без копий карточка всё равно показывается по оригиналу, поэтому сообщение не возвращается в очередь
+            log.error("Image variants were not created for image " + task.imageId() + ": " + e.getClass() + " - " + e.getMessage());
+        }
+    }
+
+    // Большие фотографии декодируются с прореживанием, чтобы в памяти не держать растр на десятки мегапикселей
+    private BufferedImage readScaledDown(byte[] content, int targetWidth) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(content))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int subsampling = Math.max(1, reader.getWidth(0) / (targetWidth * 2));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage resize(BufferedImage source, int targetWidth) {
+        int width = Math.min(targetWidth, source.getWidth());
+        int height = Math.max(1, Math.round((float) source.getHeight() * width / source.getWidth()));
+
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+}
@@ -4,26 +4,64 @@ import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import karm.van.exception.ImageNotDeletedException;
 import karm.van.exception.ImageNotFoundException;
+import karm.van.dto.StoredObjectDto;
 import karm.van.exception.ImageNotSavedException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.FileTransformerConfiguration;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * All storage calls go through one {@link S3AsyncClient}. Its connection pool is the concurrency budget:
+ * no more than {@code minio.async.max-concurrency} requests are in flight, the rest wait for a connection.
+ * Batch methods start every request at once and wait for all of them, deletes are grouped into
+ * DeleteObjects calls of up to 1000 keys and large files are uploaded in parts.
+ */
 @Service
 @Slf4j
 public class MinioService {
+    private static final int MAX_KEYS_PER_DELETE = 1000;
 
     @Value("${minio.endpoint}")
     private String minioEndpoint;
@@ -34,47 +72,178 @@ public class MinioService {
     @Value("${minio.password}")
     private String minioPassword;
 
-    private S3Client client;
+    // Адрес, по которому MinIO доступен клиентам снаружи, подписанные ссылки выдаются на него
+    @Value("${minio.public-endpoint:http://${minio.endpoint}:9000}")
+    private String minioPublicEndpoint;
+
+    @Value("${minio.async.max-concurrency:32}")
+    private int maxConcurrency;
+
+    @Value("${minio.async.multipart-threshold:16MB}")
+    private DataSize multipartThreshold;
+
+    @Value("${minio.async.part-size:8MB}")
+    private DataSize partSize;
+
+    @Value("${minio.async.upload-threads:8}")
+    private int uploadThreads;
+
+    @Value("${minio.async.upload-queue:100}")
+    private int uploadQueue;
+
+    private S3AsyncClient client;
+
+    private S3Presigner presigner;
+
+    // Читает загруженные файлы из InputStream, чтобы не блокировать потоки Netty.
+    // Пул свой и ограниченный: большая загрузка не занимает общий ForkJoinPool.
+    // Задачу в пул отправляет SDK из своих потоков, поэтому читать файл в вызывающем потоке нельзя:
+    // место в пуле заранее занимает поток запроса через uploadSlots и ждёт, пока оно освободится
+    private ExecutorService uploadReaders;
+
+    private Semaphore uploadSlots;
 
     @PostConstruct
     public void MinioServer(){
-        client = S3Client.builder()
+        client = S3AsyncClient.builder()
                 .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(minioUser,minioPassword)))
                 .endpointOverride(URI.create("http://"+minioEndpoint+":9000"))
                 .region(Region.US_EAST_1)
                 .forcePathStyle(true)
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(maxConcurrency))
+                .multipartEnabled(true)
+                .multipartConfiguration(multipart -> multipart
+                        .thresholdInBytes(multipartThreshold.toBytes())
+                        .minimumPartSizeInBytes(partSize.toBytes()))
+                .build();
+
+        presigner = S3Presigner.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(minioUser,minioPassword)))
+                .endpointOverride(URI.create(minioPublicEndpoint))
+                .region(Region.US_EAST_1)
+                .serviceConfiguration(S3Configuration.builder()
+                        .pathStyleAccessEnabled(true)
+                        .build())
                 .build();
+
+        uploadReaders = new ThreadPoolExecutor(uploadThreads, uploadThreads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(uploadQueue),
+                new CustomizableThreadFactory("minio-upload-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        uploadSlots = new Semaphore(uploadThreads + uploadQueue);
     }
 
-    public void moveObject(String oldBucketName, String newBucketName, String fileName) throws ImageNotFoundException {
-        try {
+    public PresignedPutObjectRequest presignPutObject(String bucketName, String fileName, String contentType, Duration ttl) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(fileName)
+                .contentType(contentType)
+                .build();
 
-            CopyObjectRequest copyObjectRequest = CopyObjectRequest.builder()
-                    .sourceBucket(oldBucketName)
-                    .sourceKey(fileName)
-                    .destinationBucket(newBucketName)
-                    .destinationKey(fileName)
+        PutObjectPresignRequest presignRequest = PutObjectPresignRequest.builder()
+                .signatureDuration(ttl)
+                .putObjectRequest(putObjectRequest)
+                .build();
+
+        return presigner.presignPutObject(presignRequest);
+    }
+
+    public OptionalLong getObjectSize(String bucketName, String fileName) {
+        try {
+            HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(fileName)
                     .build();
-            client.copyObject(copyObjectRequest);
+            return OptionalLong.of(client.headObject(headObjectRequest).join().contentLength());
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof NoSuchKeyException
+                    || (cause instanceof S3Exception s3Exception && s3Exception.statusCode() == 404)) {
+                return OptionalLong.empty();
+            }
+            throw e;
+        }
+    }
 
+    public void putObject(String bucketName, MultipartFile file, String fileName) throws ImageNotSavedException {
+        putObjects(bucketName, Map.of(fileName, file));
+    }
 
-            delObject(oldBucketName, fileName);
+    public void putObjects(String bucketName, Map<String, MultipartFile> files) throws ImageNotSavedException {
+        try {
+            List<CompletableFuture<?>> uploads = new ArrayList<>();
+            for (Map.Entry<String, MultipartFile> entry : files.entrySet()) {
+                PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(entry.getKey())
+                        .contentType(entry.getValue().getContentType())
+                        .build();
+                uploadSlots.acquire();
+                CompletableFuture<?> upload;
+                try {
+                    AsyncRequestBody body = AsyncRequestBody.fromInputStream(
+                            entry.getValue().getInputStream(), entry.getValue().getSize(), uploadReaders);
+                    upload = client.putObject(putObjectRequest, body);
+                } catch (IOException | RuntimeException e) {
+                    uploadSlots.release();
+                    throw e;
+                }
+                uploads.add(upload.whenComplete((response, error) -> uploadSlots.release()));
+            }
+            CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImageNotSavedException("An error occurred while uploading the image");
+        } catch (IOException | CompletionException e) {
+            log.error("The image was not uploaded: " + unwrap(e).getMessage());
+            throw new ImageNotSavedException("An error occurred while uploading the image");
+        }
+    }
 
-        } catch (NoSuchKeyException e) {
-            throw new ImageNotFoundException("The image was not found in the specified bucket: " + oldBucketName);
-        } catch (Exception e) {
-            throw new RuntimeException("An error occurred while moving the image: " + e.getMessage(), e);
+    public byte[] getObjectBytes(String bucketName, String fileName) throws ImageNotFoundException {
+        try {
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(fileName)
+                    .build();
+            return client.getObject(getObjectRequest, AsyncResponseTransformer.toBytes()).join().asByteArray();
+        } catch (CompletionException e) {
+            if (unwrap(e) instanceof NoSuchKeyException) {
+                throw new ImageNotFoundException("The image was not found in the specified bucket: " + bucketName);
+            }
+            throw new RuntimeException("An error occurred while reading the image: " + unwrap(e).getMessage(), unwrap(e));
         }
     }
 
-    public void putObject(String bucketName, MultipartFile file, String fileName) throws ImageNotSavedException {
+    public StoredObjectDto downloadObject(String bucketName, String fileName, Path target) throws ImageNotFoundException {
+        try {
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(fileName)
+                    .build();
+            GetObjectResponse response = client.getObject(getObjectRequest,
+                    AsyncResponseTransformer.toFile(target, FileTransformerConfiguration.defaultCreateOrReplaceExisting())).join();
+            return new StoredObjectDto(response.contentLength(), response.eTag(), response.lastModified(), response.contentType());
+        } catch (CompletionException e) {
+            if (unwrap(e) instanceof NoSuchKeyException) {
+                throw new ImageNotFoundException("The image was not found in the specified bucket: " + bucketName);
+            }
+            throw new RuntimeException("An error occurred while reading the image: " + unwrap(e).getMessage(), unwrap(e));
+        }
+    }
+
+    public void putObject(String bucketName, String fileName, byte[] content, String contentType) throws ImageNotSavedException {
         try {
             PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                     .bucket(bucketName)
                     .key(fileName)
+                    .contentType(contentType)
                     .build();
-            client.putObject(putObjectRequest, RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
-        }catch (Exception e){
+            client.putObject(putObjectRequest, AsyncRequestBody.fromBytes(content)).join();
+        } catch (CompletionException e) {
+            log.error("The image was not uploaded: " + unwrap(e).getMessage());
             throw new ImageNotSavedException("An error occurred while uploading the image");
         }
     }
@@ -85,17 +254,64 @@ public class MinioService {
                     .bucket(bucketName)
                     .key(imageName)
                     .build();
-            client.deleteObject(deleteObjectRequest);
+            client.deleteObject(deleteObjectRequest).join();
         } catch (Exception e) {
             throw new ImageNotDeletedException("An error occurred while delete the image");
         }
     }
 
+    public void delObjects(String bucketName, List<String> imageNames) throws ImageNotDeletedException {
+        if (imageNames.isEmpty()) {
+            return;
+        }
+        if (imageNames.size() == 1) {
+            delObject(bucketName, imageNames.get(0));
+            return;
+        }
+
+        List<CompletableFuture<List<S3Error>>> batches = new ArrayList<>();
+        for (int from = 0; from < imageNames.size(); from += MAX_KEYS_PER_DELETE) {
+            List<ObjectIdentifier> keys = imageNames.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, imageNames.size()))
+                    .stream()
+                    .map(imageName -> ObjectIdentifier.builder().key(imageName).build())
+                    .toList();
+
+            DeleteObjectsRequest deleteObjectsRequest = DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder().objects(keys).quiet(true).build())
+                    .build();
+            batches.add(client.deleteObjects(deleteObjectsRequest).thenApply(response -> response.errors()));
+        }
+
+        try {
+            List<S3Error> errors = batches.stream()
+                    .flatMap(batch -> batch.join().stream())
+                    .toList();
+            if (!errors.isEmpty()) {
+                log.error("Failed to delete " + errors.size() + " images from " + bucketName + ", first error: " + errors.get(0).message());
+                throw new ImageNotDeletedException("An error occurred while delete the images");
+            }
+        } catch (CompletionException e) {
+            log.error("Failed to delete images from " + bucketName + ": " + unwrap(e).getMessage());
+            throw new ImageNotDeletedException("An error occurred while delete the images");
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
     @PreDestroy
     public void closeMinioClient() {
         if (client != null) {
             client.close();
-            log.info("S3Client closed successfully.");
+            log.info("S3AsyncClient closed successfully.");
+        }
+        if (presigner != null) {
+            presigner.close();
+        }
+        if (uploadReaders != null) {
+            uploadReaders.shutdown();
         }
     }
 }
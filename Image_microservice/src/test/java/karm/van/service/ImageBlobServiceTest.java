@@ -0,0 +1,109 @@
+package karm.van.service;
+
+import karm.van.model.ImageModel;
+import karm.van.repository.ImageBlobRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ImageBlobServiceTest {
+    private ImageBlobRepo imageBlobRepo;
+    private ImageBlobService imageBlobService;
+
+    @BeforeEach
+    void setUp() {
+        imageBlobRepo = mock(ImageBlobRepo.class);
+        imageBlobService = new ImageBlobService(imageBlobRepo);
+    }
+
+    @Test
+    void sameContentHasSameDigest() throws Exception {
+        String first = imageBlobService.digest(file("a.png", "content"));
+        String second = imageBlobService.digest(file("b.png", "content"));
+        String other = imageBlobService.digest(file("a.png", "other content"));
+
+        assertThat(first).hasSize(64).isEqualTo(second).isNotEqualTo(other);
+    }
+
+    @Test
+    void onlyFirstReferenceUploadsTheObject() {
+        when(imageBlobRepo.acquire("images", "hash")).thenReturn(1, 2);
+
+        assertThat(imageBlobService.acquire("images", "hash")).isTrue();
+        assertThat(imageBlobService.acquire("images", "hash")).isFalse();
+    }
+
+    @Test
+    void releasesReferencesOncePerBlob() {
+        ImageModel first = image(1L, "images", "hash");
+        ImageModel second = image(2L, "images", "hash");
+        when(imageBlobRepo.release("images", "hash", 2)).thenReturn(1);
+
+        List<ImageModel> unreferenced = imageBlobService.release(List.of(first, second));
+
+        assertThat(unreferenced).isEmpty();
+        verify(imageBlobRepo).release("images", "hash", 2);
+        verify(imageBlobRepo, never()).deleteUnreferenced(anyString(), anyString());
+    }
+
+    @Test
+    void returnsImagesWhoseBlobLostItsLastReference() {
+        ImageModel shared = image(1L, "images", "shared");
+        ImageModel lastCopy = image(2L, "images", "last");
+        ImageModel otherBucket = image(3L, "profile", "last");
+        when(imageBlobRepo.release("images", "shared", 1)).thenReturn(2);
+        when(imageBlobRepo.release("images", "last", 1)).thenReturn(0);
+        when(imageBlobRepo.release("profile", "last", 1)).thenReturn(0);
+        when(imageBlobRepo.deleteUnreferenced("images", "last")).thenReturn(1);
+        when(imageBlobRepo.deleteUnreferenced("profile", "last")).thenReturn(1);
+
+        List<ImageModel> unreferenced = imageBlobService.release(List.of(shared, lastCopy, otherBucket));
+
+        assertThat(unreferenced).containsExactlyInAnyOrder(lastCopy, otherBucket);
+    }
+
+    @Test
+    void keepsObjectWhenBlobWasAcquiredAgainBeforeDelete() {
+        ImageModel image = image(1L, "images", "hash");
+        when(imageBlobRepo.release("images", "hash", 1)).thenReturn(0);
+        when(imageBlobRepo.deleteUnreferenced("images", "hash")).thenReturn(0);
+
+        assertThat(imageBlobService.release(List.of(image))).isEmpty();
+    }
+
+    @Test
+    void skipsImagesWithoutDigest() {
+        ImageModel legacy = image(1L, "images", null);
+
+        assertThat(imageBlobService.release(List.of(legacy))).isEmpty();
+        verifyNoInteractions(imageBlobRepo);
+    }
+
+    @Test
+    void missingBlobRowIsNotDeleted() {
+        ImageModel image = image(1L, "images", "hash");
+        when(imageBlobRepo.release("images", "hash", 1)).thenReturn(null);
+
+        assertThat(imageBlobService.release(List.of(image))).isEmpty();
+        verify(imageBlobRepo, never()).deleteUnreferenced(anyString(), anyString());
+    }
+
+    private static MockMultipartFile file(String name, String content) {
+        return new MockMultipartFile("file", name, "image/png", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ImageModel image(Long id, String bucket, String contentHash) {
+        return ImageModel.builder().id(id).imageBucket(bucket).contentHash(contentHash).build();
+    }
+}
@@ -0,0 +1,58 @@
+package karm.van.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Verifies access tokens issued by the authentication microservice without calling it:
+ * HS256 signature, expiry and {@code token_type} are checked in process, and the subject
+ * is looked up in the revocation set pushed by the authentication microservice.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JwtVerifier {
+    private final JwtVerifierProperties properties;
+    private final RevocationRegistry revocationRegistry;
+
+    public boolean isValidAccessToken(String token) {
+        return extractUsername(token).isPresent();
+    }
+
+    /**
+     * @return the subject of a valid, non-revoked access token, otherwise empty
+     */
+    public Optional<String> extractUsername(String token) {
+        try {
+            Jws<Claims> jws = Jwts.parser()
+                    .setSigningKey(properties.getSecretKey())
+                    .parseClaimsJws(token);
+
+            if (!SignatureAlgorithm.HS256.getValue().equals(jws.getHeader().getAlgorithm())) {
+                return Optional.empty();
+            }
+
+            Claims claims = jws.getBody();
+            if (!"access".equals(claims.get("token_type")) || claims.getExpiration() == null) {
+                return Optional.empty();
+            }
+
+            String username = claims.getSubject();
+            if (username == null || revocationRegistry.isRevoked(username)) {
+                return Optional.empty();
+            }
+
+            return Optional.of(username);
+        } catch (Exception e) {
+            log.debug("Token rejected: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
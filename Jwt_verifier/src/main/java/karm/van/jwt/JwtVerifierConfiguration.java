@@ -0,0 +1,9 @@
+package karm.van.jwt;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(JwtVerifierProperties.class)
+public class JwtVerifierConfiguration {
+}
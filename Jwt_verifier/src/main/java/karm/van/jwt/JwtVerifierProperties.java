@@ -0,0 +1,20 @@
+package karm.van.jwt;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "jwt")
+@Getter
+@Setter
+public class JwtVerifierProperties {
+    private String secretKey;
+    private Revocation revocation = new Revocation();
+
+    @Getter
+    @Setter
+    public static class Revocation {
+        private String key = "auth:revoked-users";
+        private String channel = "auth:revocations";
+    }
+}
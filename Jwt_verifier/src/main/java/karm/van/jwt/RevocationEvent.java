@@ -0,0 +1,8 @@
+package karm.van.jwt;
+
+/**
+ * Published by the authentication microservice when tokens of a user must stop being accepted.
+ * {@code until} is the epoch millisecond up to which the user is revoked, {@code 0} lifts the revocation.
+ */
+public record RevocationEvent(String userName, long until) {
+}
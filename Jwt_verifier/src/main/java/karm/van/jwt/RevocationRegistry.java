@@ -0,0 +1,121 @@
+package karm.van.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local copy of the users whose tokens were revoked by the authentication microservice.
+ * The full set is read from a Redis hash on every (re)subscription, then kept up to date
+ * from the revocation channel, so lookups never leave the JVM.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RevocationRegistry {
+    private final JwtVerifierProperties properties;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Long> revokedUntil = new ConcurrentHashMap<>();
+    private final JedisPubSub subscriber = new RevocationSubscriber();
+    private JedisPooled redis;
+    private Thread subscriberThread;
+    private volatile boolean running = true;
+
+    @Value("${redis.host}")
+    private String redisHost;
+
+    @PostConstruct
+    public void init(){
+        redis = new JedisPooled(redisHost,6379);
+        subscriberThread = new Thread(this::listen, "jwt-revocation-listener");
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+    }
+
+    public boolean isRevoked(String userName) {
+        Long until = revokedUntil.get(userName);
+        if (until == null) {
+            return false;
+        }
+        if (until > System.currentTimeMillis()) {
+            return true;
+        }
+        // Истёкший отзыв больше не нужен, удаляем только если его не успели обновить
+        revokedUntil.remove(userName, until);
+        return false;
+    }
+
+    private void listen() {
+        while (running) {
+            try {
+                redis.subscribe(subscriber, properties.getRevocation().getChannel());
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Revocation channel is unavailable, retrying: " + e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void reload() {
+        Map<String, String> revoked = redis.hgetAll(properties.getRevocation().getKey());
+        long now = System.currentTimeMillis();
+        revokedUntil.clear();
+        revoked.forEach((userName, until) -> {
+            long revokedUntilMillis = Long.parseLong(until);
+            if (revokedUntilMillis > now) {
+                revokedUntil.put(userName, revokedUntilMillis);
+            }
+        });
+    }
+
+    private void apply(RevocationEvent event) {
+        if (event.until() > 0) {
+            revokedUntil.put(event.userName(), event.until());
+        } else {
+            revokedUntil.remove(event.userName());
+        }
+    }
+
+    @PreDestroy
+    public void close(){
+        running = false;
+        if (subscriber.isSubscribed()) {
+            subscriber.unsubscribe();
+        }
+        redis.close();
+    }
+
+    private class RevocationSubscriber extends JedisPubSub {
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            // Сообщения, пропущенные во время переподключения, восстанавливаем из хеша
+            reload();
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            try {
+                apply(objectMapper.readValue(message, RevocationEvent.class));
+            } catch (Exception e) {
+                log.error("Invalid revocation event: " + e.getMessage());
+            }
+        }
+    }
+}
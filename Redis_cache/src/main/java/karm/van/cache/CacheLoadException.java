@@ -0,0 +1,10 @@
+package karm.van.cache;
+
+/**
+ * Wraps the exception thrown by a {@link ValueLoader}, so callers can unwrap their own checked exceptions.
+ */
+public class CacheLoadException extends RuntimeException {
+    public CacheLoadException(Throwable cause) {
+        super(cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,378 @@
+package karm.van.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.SetParams;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Two-tier string cache: a size-bounded in-heap L1 in front of Redis (L2).
+ * Hits in L1 do no network I/O at all. Every write or delete made through this class is
+ * announced on an invalidation channel, and the other instances drop their L1 copy of the key.
+ * After a reconnect to the channel the whole L1 is dropped, because messages may have been missed.
+ * A read or load that overlaps an invalidation of the same key does not put its result into L1,
+ * otherwise the old value would survive there for the whole local TTL.
+ * <p>
+ * {@link #getOrLoad} adds stale-while-revalidate on top: a value older than its soft TTL is still
+ * returned while one background refresh rebuilds it, and a missing value is built by a single caller
+ * per key (in-process futures plus a Redis lock across instances) while the others wait for it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NearCache {
+    private final JedisPooled redis;
+    private final NearCacheProperties properties;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final JedisPubSub subscriber = new InvalidationSubscriber();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    // Счётчики инвалидаций по полосам ключей, ограничены по памяти в отличие от счётчика на каждый ключ
+    private static final int INVALIDATION_STRIPES = 1024;
+    private final AtomicLongArray invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+    private static final String RELEASE_LOCK_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+    private ThreadPoolExecutor refresher;
+    private Cache<String, Entry> local;
+    private Thread subscriberThread;
+    private volatile boolean running = true;
+
+    private record Entry(String value, long ttlNanos) {
+    }
+
+    // Значение хранится в Redis вместе с моментом, после которого его пора обновить: "<softExpireAt>|<value>"
+    private record Envelope(long softExpireAt, String value) {
+        static Envelope wrap(String value, long softTtlSeconds) {
+            return new Envelope(System.currentTimeMillis() + softTtlSeconds * 1000, value);
+        }
+
+        static Envelope parse(String raw) {
+            int separator = raw.indexOf('|');
+            if (separator < 0) {
+                return null;
+            }
+            try {
+                return new Envelope(Long.parseLong(raw.substring(0, separator)), raw.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        boolean isStale() {
+            return System.currentTimeMillis() >= softExpireAt;
+        }
+
+        String raw() {
+            return softExpireAt + "|" + value;
+        }
+    }
+
+    @PostConstruct
+    public void init(){
+        long maxLocalTtl = properties.getLocalTtl().toNanos();
+
+        local = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return Math.min(entry.ttlNanos(), maxLocalTtl);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return Math.min(entry.ttlNanos(), maxLocalTtl);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+
+        refresher = new ThreadPoolExecutor(
+                properties.getRefreshThreads(), properties.getRefreshThreads(),
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1000),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "near-cache-refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        subscriberThread = new Thread(this::listen, "near-cache-invalidation-listener");
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+    }
+
+    public Optional<String> get(String key) {
+        Entry entry = local.getIfPresent(key);
+        if (entry != null) {
+            return Optional.of(entry.value());
+        }
+
+        long stamp = invalidationStamp(key);
+        Response<String> value;
+        Response<Long> ttl;
+        try (Pipeline pipeline = redis.pipelined()) {
+            value = pipeline.get(key);
+            ttl = pipeline.pttl(key);
+            pipeline.sync();
+        }
+
+        if (value.get() == null) {
+            return Optional.empty();
+        }
+
+        // pttl = -1 означает ключ без срока жизни, тогда ограничиваемся localTtl
+        long ttlMillis = ttl.get() > 0 ? ttl.get() : Long.MAX_VALUE / 1_000_000;
+        putLocal(key, new Entry(value.get(), ttlMillis * 1_000_000), stamp);
+        return Optional.of(value.get());
+    }
+
+    public void set(String key, String value, long ttlSeconds) {
+        redis.setex(key, ttlSeconds, value);
+        long stamp = invalidateLocal(key);
+        putLocal(key, new Entry(value, ttlSeconds * 1_000_000_000), stamp);
+        publish(key);
+    }
+
+    public void del(String key) {
+        redis.del(key);
+        invalidateLocal(key);
+        publish(key);
+    }
+
+    public long incr(String key) {
+        long value = redis.incr(key);
+        invalidateLocal(key);
+        publish(key);
+        return value;
+    }
+
+    private int stripe(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % INVALIDATION_STRIPES;
+    }
+
+    private long invalidationStamp(String key) {
+        return invalidations.get(stripe(key));
+    }
+
+    // Счётчик увеличивается до удаления из L1, чтобы уже начатое чтение не вернуло туда старое значение
+    private long invalidateLocal(String key) {
+        long stamp = invalidations.incrementAndGet(stripe(key));
+        local.invalidate(key);
+        return stamp;
+    }
+
+    private void invalidateAllLocal() {
+        for (int i = 0; i < INVALIDATION_STRIPES; i++) {
+            invalidations.incrementAndGet(i);
+        }
+        local.invalidateAll();
+    }
+
+    private void putLocal(String key, Entry entry, long stamp) {
+        local.asMap().compute(key, (k, current) -> invalidationStamp(k) == stamp ? entry : current);
+    }
+
+    /**
+     * Returns the cached value, building it with {@code loader} when it is missing.
+     * Values older than {@code softTtlSeconds} are returned as is and refreshed in the background;
+     * Redis drops them completely after {@code hardTtlSeconds}.
+     *
+     * @throws CacheLoadException wrapping the exception thrown by the loader
+     */
+    public String getOrLoad(String key, long softTtlSeconds, long hardTtlSeconds, ValueLoader loader) {
+        Optional<Envelope> cached = get(key).map(Envelope::parse);
+
+        if (cached.isPresent()) {
+            Envelope envelope = cached.get();
+            if (envelope.isStale()) {
+                refreshInBackground(key, envelope.value(), softTtlSeconds, hardTtlSeconds, loader);
+            }
+            return envelope.value();
+        }
+
+        CompletableFuture<String> own = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            return await(running);
+        }
+
+        try {
+            String value = load(key, softTtlSeconds, hardTtlSeconds, loader, null);
+            own.complete(value);
+            return value;
+        } catch (CacheLoadException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private String await(CompletableFuture<String> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CacheLoadException cacheLoadException) {
+                throw cacheLoadException;
+            }
+            throw new CacheLoadException(e.getCause());
+        }
+    }
+
+    private void refreshInBackground(String key, String staleValue, long softTtlSeconds, long hardTtlSeconds, ValueLoader loader) {
+        CompletableFuture<String> own = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, own) != null) {
+            return;
+        }
+
+        try {
+            refresher.execute(() -> {
+                try {
+                    own.complete(load(key, softTtlSeconds, hardTtlSeconds, loader, staleValue));
+                } catch (Exception e) {
+                    log.warn("Background refresh of key " + key + " failed: " + e.getMessage());
+                    own.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, own);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, own);
+            own.cancel(false);
+        }
+    }
+
+    // staleValue задан у фонового обновления: если значение уже обновляет другой экземпляр, возвращается старое
+    private String load(String key, long softTtlSeconds, long hardTtlSeconds, ValueLoader loader, String staleValue) {
+        String lockKey = "lock:" + key;
+        String lockToken = UUID.randomUUID().toString();
+        long lockTimeout = properties.getLockTimeout().toMillis();
+        boolean locked = "OK".equals(redis.set(lockKey, lockToken, SetParams.setParams().nx().px(lockTimeout)));
+
+        if (!locked) {
+            if (staleValue != null) {
+                // Будущее фонового обновления могут ждать и другие запросы, поэтому null им отдавать нельзя
+                return staleValue;
+            }
+            Optional<String> built = waitForOtherInstance(key, lockTimeout);
+            if (built.isPresent()) {
+                return built.get();
+            }
+        }
+
+        try {
+            long stamp = invalidationStamp(key);
+            String value = loader.load();
+            // Пока строилось значение, ключ инвалидировали: источник мог измениться, кэшировать результат нельзя
+            if (invalidationStamp(key) == stamp) {
+                set(key, Envelope.wrap(value, softTtlSeconds).raw(), hardTtlSeconds);
+            }
+            return value;
+        } catch (CacheLoadException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CacheLoadException(e);
+        } finally {
+            if (locked) {
+                redis.eval(RELEASE_LOCK_SCRIPT, List.of(lockKey), List.of(lockToken));
+            }
+        }
+    }
+
+    private Optional<String> waitForOtherInstance(String key, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            Optional<Envelope> envelope = get(key).map(Envelope::parse);
+            if (envelope.isPresent()) {
+                return Optional.of(envelope.get().value());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void publish(String key) {
+        try {
+            redis.publish(properties.getInvalidationChannel(), instanceId + " " + key);
+        } catch (Exception e) {
+            log.warn("Invalidation of key " + key + " was not published: " + e.getMessage());
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try {
+                redis.subscribe(subscriber, properties.getInvalidationChannel());
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Invalidation channel is unavailable, retrying: " + e.getMessage());
+                invalidateAllLocal();
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close(){
+        running = false;
+        refresher.shutdownNow();
+        if (subscriber.isSubscribed()) {
+            subscriber.unsubscribe();
+        }
+    }
+
+    private class InvalidationSubscriber extends JedisPubSub {
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            // Пока подписки не было, сообщения об изменениях могли потеряться
+            invalidateAllLocal();
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            int separator = message.indexOf(' ');
+            if (separator < 0 || message.substring(0, separator).equals(instanceId)) {
+                return;
+            }
+            invalidateLocal(message.substring(separator + 1));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package karm.van.cache;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "near-cache")
+@Getter
+@Setter
+public class NearCacheProperties {
+    private long maxSize = 10000;
+    // Верхняя граница жизни записи в L1, даже если в Redis она живёт дольше
+    private Duration localTtl = Duration.ofSeconds(30);
+    private String invalidationChannel = "cache:invalidations";
+    // Сколько ждать значение, которое уже строит другой экземпляр, прежде чем строить его самим
+    private Duration lockTimeout = Duration.ofSeconds(5);
+    private int refreshThreads = 2;
+}
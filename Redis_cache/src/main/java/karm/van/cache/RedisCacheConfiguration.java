@@ -0,0 +1,17 @@
+package karm.van.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import redis.clients.jedis.JedisPooled;
+
+@Configuration
+@EnableConfigurationProperties(NearCacheProperties.class)
+public class RedisCacheConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public JedisPooled jedisPooled(@Value("${redis.host}") String redisHost) {
+        return new JedisPooled(redisHost, 6379);
+    }
+}
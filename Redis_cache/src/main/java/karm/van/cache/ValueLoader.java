@@ -0,0 +1,6 @@
+package karm.van.cache;
+
+@FunctionalInterface
+public interface ValueLoader {
+    String load() throws Exception;
+}
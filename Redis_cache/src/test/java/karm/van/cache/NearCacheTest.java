@@ -0,0 +1,161 @@
+package karm.van.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.SetParams;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NearCacheTest {
+    private static final String KEY = "card:1";
+
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private JedisPooled redis;
+    private Response<String> value;
+    private NearCache nearCache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redis = mock(JedisPooled.class);
+        Pipeline pipeline = mock(Pipeline.class);
+        value = mock(Response.class);
+        Response<Long> ttl = mock(Response.class);
+        when(redis.pipelined()).thenReturn(pipeline);
+        when(pipeline.get(anyString())).thenReturn(value);
+        when(pipeline.pttl(anyString())).thenReturn(ttl);
+        when(ttl.get()).thenReturn(60_000L);
+        when(redis.set(anyString(), anyString(), any(SetParams.class))).thenReturn("OK");
+        // Подписка держит поток слушателя, как настоящий subscribe, пока кэш не закрыт
+        doAnswer(invocation -> {
+            closed.await();
+            return null;
+        }).when(redis).subscribe(any(JedisPubSub.class), any(String[].class));
+
+        nearCache = new NearCache(redis, new NearCacheProperties());
+        nearCache.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        closed.countDown();
+        nearCache.close();
+    }
+
+    @Test
+    void loadsMissingValueAndStoresItInRedis() {
+        when(value.get()).thenReturn(null);
+
+        String result = nearCache.getOrLoad(KEY, 60, 600, () -> "built");
+
+        assertThat(result).isEqualTo("built");
+        verify(redis).setex(eq(KEY), eq(600L), endsWith("|built"));
+        verify(redis).eval(anyString(), eq(List.of("lock:" + KEY)), anyList());
+    }
+
+    @Test
+    void returnsFreshValueWithoutCallingLoader() {
+        when(value.get()).thenReturn(envelope(System.currentTimeMillis() + 60_000, "cached"));
+        AtomicInteger loads = new AtomicInteger();
+
+        String result = nearCache.getOrLoad(KEY, 60, 600, () -> "built" + loads.incrementAndGet());
+
+        assertThat(result).isEqualTo("cached");
+        assertThat(loads).hasValue(0);
+        verify(redis, never()).setex(anyString(), anyLong(), anyString());
+    }
+
+    @Test
+    void returnsStaleValueAndRefreshesItInBackground() {
+        when(value.get()).thenReturn(envelope(System.currentTimeMillis() - 1, "stale"));
+
+        String result = nearCache.getOrLoad(KEY, 60, 600, () -> "fresh");
+
+        assertThat(result).isEqualTo("stale");
+        verify(redis, timeout(1000)).setex(eq(KEY), eq(600L), endsWith("|fresh"));
+    }
+
+    @Test
+    void skipsBackgroundRefreshWhenAnotherInstanceHoldsTheLock() {
+        when(value.get()).thenReturn(envelope(System.currentTimeMillis() - 1, "stale"));
+        when(redis.set(startsWith("lock:"), anyString(), any(SetParams.class))).thenReturn(null);
+        AtomicInteger loads = new AtomicInteger();
+
+        String result = nearCache.getOrLoad(KEY, 60, 600, () -> "fresh" + loads.incrementAndGet());
+
+        assertThat(result).isEqualTo("stale");
+        verify(redis, timeout(1000)).set(eq("lock:" + KEY), anyString(), any(SetParams.class));
+        verify(redis, after(200).never()).setex(anyString(), anyLong(), anyString());
+        assertThat(loads).hasValue(0);
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        when(value.get()).thenReturn(null);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> nearCache.getOrLoad(KEY, 60, 600, () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return "built";
+        }));
+        assertThat(loading.await(1, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> nearCache.getOrLoad(KEY, 60, 600, () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        release.countDown();
+
+        assertThat(first.get(1, TimeUnit.SECONDS)).isEqualTo("built");
+        assertThat(second.get(1, TimeUnit.SECONDS)).isEqualTo("built");
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void wrapsLoaderFailureAndReleasesLock() {
+        when(value.get()).thenReturn(null);
+
+        assertThatThrownBy(() -> nearCache.getOrLoad(KEY, 60, 600, () -> {
+            throw new IOException("database is down");
+        }))
+                .isInstanceOf(CacheLoadException.class)
+                .hasCauseInstanceOf(IOException.class);
+        verify(redis).eval(anyString(), eq(List.of("lock:" + KEY)), anyList());
+        verify(redis, never()).setex(anyString(), anyLong(), anyString());
+    }
+
+    private static String envelope(long softExpireAt, String value) {
+        return softExpireAt + "|" + value;
+    }
+}